@@ -20,8 +20,12 @@ package org.sirio5.beans;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
 import javax.servlet.http.HttpSession;
 import org.apache.commons.lang.ArrayUtils;
@@ -41,10 +45,21 @@ import org.sirio5.utils.SU;
  */
 public class BeanFactory
 {
-  private static String[] basePaths;
-  private static final HashMap<String, String> nameMap = new HashMap<>();
-  private static final ArrayList<Function<String, String>> nameResolvers = new ArrayList<>();
+  private static volatile String[] basePaths;
+  private static final Map<String, String> nameMap = new ConcurrentHashMap<>();
+  private static final List<Function<String, String>> nameResolvers = new CopyOnWriteArrayList<>();
+  private static final Map<Class, Constructor> constructorMap = new ConcurrentHashMap<>();
   public static final String BEAN_SESSION_PREFIX = "BEAN:";
+  //
+  // tabella di lock per (sessione, bean): deve essere una potenza di 2
+  private static final int LOCK_STRIPES = 256;
+  private static final ReentrantLock[] sessionLocks = new ReentrantLock[LOCK_STRIPES];
+
+  static
+  {
+    for(int i = 0; i < LOCK_STRIPES; i++)
+      sessionLocks[i] = new ReentrantLock();
+  }
 
   /**
    * Ritorna path di base per la costruzione di bean.
@@ -62,6 +77,7 @@ public class BeanFactory
   public static void setBasePaths(String[] basePath)
   {
     BeanFactory.basePaths = basePath;
+    constructorMap.clear();
   }
 
   /**
@@ -71,6 +87,7 @@ public class BeanFactory
   public static void addBasePath(String basePath)
   {
     basePaths = (String[]) ArrayUtils.add(basePaths, basePath);
+    constructorMap.clear();
   }
 
   /**
@@ -95,6 +112,49 @@ public class BeanFactory
     return (T) getFromSession(data, beanClass, createSessionAttributeName(beanClass));
   }
 
+  /**
+   * Estrazione/costruzione di un bean di sessione con lock.
+   * Come la getFromSession() ma l'estrazione/costruzione del bean è serializzata
+   * solo fra le richieste della stessa sessione per lo stesso bean; richieste
+   * di sessioni diverse procedono in parallelo.
+   * @param <T> tipo del bean da estrarre/creare
+   * @param data oggetto rundata con relativa sessione
+   * @param beanClass classe del bean
+   * @return una istanza del bean
+   * @throws Exception
+   */
+  public static <T extends CoreBaseBean> T getFromSessionLocked(RunData data, Class<T> beanClass)
+     throws Exception
+  {
+    String key = createSessionAttributeName(beanClass);
+    ReentrantLock lock = getSessionLock(data.getSession(), key);
+
+    lock.lock();
+    try
+    {
+      return (T) getFromSession(data, beanClass, key);
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Ritorna il lock associato alla coppia sessione/attributo.
+   * I lock sono distribuiti su una tabella fissa: coppie diverse possono
+   * condividere lo stesso lock ma una coppia usa sempre lo stesso.
+   * @param session sessione HTTP
+   * @param key stringa nome attributo di sessione
+   * @return il lock
+   */
+  public static ReentrantLock getSessionLock(HttpSession session, String key)
+  {
+    int h = session.getId().hashCode() * 31 + key.hashCode();
+    h ^= (h >>> 16);
+    return sessionLocks[h & (LOCK_STRIPES - 1)];
+  }
+
   /**
    * Estrazione (senza costruzione) di un bean di sessione.
    * Come la getFromSession() ma il bean viene solo estratto dalla sessione se esiste,
@@ -220,23 +280,47 @@ public class BeanFactory
    */
   public static <T extends CoreBaseBean> T createBean(Class<T> beanClass)
   {
-    String myPackage = ClassOper.getClassPackage(beanClass);
-    String className = ClassOper.getClassName(beanClass);
-    Class beanClassOverride = ClassOper.loadClass(getClassnameOverride(className), myPackage, basePaths);
-    if(beanClassOverride != null)
-      beanClass = beanClassOverride;
+    Constructor<T> c = getBeanConstructor(beanClass);
 
     try
     {
-      Constructor<T> c = beanClass.getConstructor();
       return c.newInstance();
     }
     catch(Exception ex)
     {
-      throw new RuntimeException("Failed to create bean " + beanClass, ex);
+      throw new RuntimeException("Failed to create bean " + c.getDeclaringClass(), ex);
     }
   }
 
+  /**
+   * Ritorna il costruttore della classe effettiva del bean.
+   * La ricerca dell'override (anche quando non esiste) e del costruttore
+   * viene eseguita una sola volta per ogni classe di bean; il risultato
+   * viene scartato quando cambiano override o path di ricerca.
+   * @param <T> tipo del bean
+   * @param beanClass classe del bean richiesta
+   * @return costruttore senza parametri della classe effettiva (override o beanClass)
+   */
+  public static <T> Constructor<T> getBeanConstructor(Class<T> beanClass)
+  {
+    return constructorMap.computeIfAbsent(beanClass, (bc) ->
+    {
+      String myPackage = ClassOper.getClassPackage(bc);
+      String className = ClassOper.getClassName(bc);
+      Class beanClassOverride = ClassOper.loadClass(getClassnameOverride(className), myPackage, basePaths);
+      Class effective = beanClassOverride != null ? beanClassOverride : bc;
+
+      try
+      {
+        return effective.getConstructor();
+      }
+      catch(Exception ex)
+      {
+        throw new RuntimeException("Failed to create bean " + effective, ex);
+      }
+    });
+  }
+
   /**
    * Verifica per override di setup del bean indicato.
    * @param nomeBean nome del bean di cui si chiede override
@@ -253,18 +337,19 @@ public class BeanFactory
     {
       if((tmp = SU.okStrNull(fr.apply(nomeBean))) != null)
       {
-        nameMap.put(nomeBean, tmp);
-        return tmp;
+        String prev = nameMap.putIfAbsent(nomeBean, tmp);
+        return prev == null ? tmp : prev;
       }
     }
 
-    nameMap.put(nomeBean, nomeBean);
-    return nomeBean;
+    String prev = nameMap.putIfAbsent(nomeBean, nomeBean);
+    return prev == null ? nomeBean : prev;
   }
 
   public static void clearMaps()
   {
     nameMap.clear();
+    constructorMap.clear();
   }
 
   /**
@@ -275,6 +360,7 @@ public class BeanFactory
   public static void addBeanOverride(String originalName, String overrideName)
   {
     nameMap.put(originalName, overrideName);
+    constructorMap.clear();
   }
 
   /**
@@ -286,6 +372,7 @@ public class BeanFactory
   public static void addOverrideResolver(Function<String, String> fr)
   {
     nameResolvers.add(fr);
+    constructorMap.clear();
   }
 
   /**
@@ -423,20 +510,15 @@ public class BeanFactory
   public static <T extends CoreTokenBean> T createTokenBean(Class<T> beanClass)
      throws Exception
   {
-    String myPackage = ClassOper.getClassPackage(beanClass);
-    String className = ClassOper.getClassName(beanClass);
-    Class beanClassOverride = ClassOper.loadClass(getClassnameOverride(className), myPackage, basePaths);
-    if(beanClassOverride != null)
-      beanClass = beanClassOverride;
+    Constructor<T> c = getBeanConstructor(beanClass);
 
     try
     {
-      Constructor<T> c = beanClass.getConstructor();
       return c.newInstance();
     }
     catch(Exception ex)
     {
-      throw new RuntimeException("Failed to create bean " + beanClass, ex);
+      throw new RuntimeException("Failed to create bean " + c.getDeclaringClass(), ex);
     }
   }
 }
@@ -42,4 +42,16 @@ public interface MenuGenerator
   public void creaSottoMenu(String submenugen, RunData data, int livello,
      Element elPadre, CoreMenuTreeNode node)
      throws Exception;
+
+  /**
+   * Indica se le voci generate possono essere condivise fra sessioni diverse.
+   * Un generatore condivisibile produce le stesse voci per tutti gli utenti
+   * con gli stessi permessi e non utilizza i dati di sessione;
+   * in questo caso il menu viene costruito una sola volta (vedi MenuTreeCache).
+   * @return vero se condivisibile (default falso)
+   */
+  default boolean isCacheable()
+  {
+    return false;
+  }
 }
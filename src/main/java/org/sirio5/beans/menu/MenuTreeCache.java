@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2026 Nicola De Nisco
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.sirio5.beans.menu;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.turbine.util.RunData;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.input.SAXBuilder;
+import org.sirio5.services.security.SEC;
+import org.sirio5.utils.SU;
+import org.sirio5.utils.TR;
+import org.sirio5.utils.tree.CoreMenuTreeNode;
+
+/**
+ * Cache condivisa dei menu XML.
+ * Il file del menu viene letto una sola volta (e riletto quando cambia
+ * la data di modifica); per ogni sessione viene calcolata un'impronta
+ * dei permessi, ovvero l'esito di tutti i controlli permessi presenti nel menu.
+ * Le sessioni con la stessa impronta (e la stessa lingua) condividono
+ * lo stesso albero e lo stesso HTML.
+ * I menu con generatori di sottomenu non condivisibili
+ * (vedi MenuGenerator.isCacheable()) vengono costruiti per ogni sessione.
+ *
+ * @author Nicola De Nisco
+ */
+public class MenuTreeCache
+{
+  private static final Log log = LogFactory.getLog(MenuTreeCache.class);
+  private static final Map<String, MenuDefinition> mapDefinitions = new ConcurrentHashMap<>();
+  private static final Map<String, SharedMenu> mapMenus = new ConcurrentHashMap<>();
+  private static final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+  private static final int maxEntries = TR.getInt("menu.cache.maxEntries", 1000);
+
+  private MenuTreeCache()
+  {
+  }
+
+  /**
+   * Definizione di menu letta da file.
+   */
+  public static class MenuDefinition
+  {
+    public final File source;
+    public final long lastModified;
+    public final Document doc;
+    public final List<String> permissions;
+    public final List<String> generators;
+
+    public MenuDefinition(File source, Document doc)
+    {
+      this.source = source;
+      this.lastModified = source.lastModified();
+      this.doc = doc;
+
+      LinkedHashSet<String> perms = new LinkedHashSet<>();
+      LinkedHashSet<String> gens = new LinkedHashSet<>();
+      collect(doc.getRootElement(), perms, gens);
+      this.permissions = Collections.unmodifiableList(new ArrayList<>(perms));
+      this.generators = Collections.unmodifiableList(new ArrayList<>(gens));
+    }
+
+    private void collect(Element el, LinkedHashSet<String> perms, LinkedHashSet<String> gens)
+    {
+      for(Element child : el.getChildren("menu"))
+      {
+        String permission = SU.okStrNull(child.getAttributeValue("permission"));
+        if(permission != null)
+          perms.add(permission);
+
+        String submenugen = SU.okStrNull(child.getAttributeValue("submenugen"));
+        if(submenugen != null)
+          gens.add(submenugen);
+
+        collect(child, perms, gens);
+      }
+    }
+
+    public boolean isModified()
+    {
+      return source.lastModified() != lastModified;
+    }
+  }
+
+  /**
+   * Menu condiviso fra le sessioni con la stessa impronta.
+   * L'albero non va modificato.
+   */
+  public static class SharedMenu
+  {
+    public final CoreMenuTreeNode padre;
+    public volatile String html;
+
+    public SharedMenu(CoreMenuTreeNode padre)
+    {
+      this.padre = padre;
+    }
+  }
+
+  /**
+   * Ritorna la definizione del menu, rileggendo il file se modificato.
+   * @param fxml file XML del menu
+   * @return definizione del menu
+   * @throws Exception
+   */
+  public static MenuDefinition getDefinition(File fxml)
+     throws Exception
+  {
+    String key = fxml.getAbsolutePath();
+    MenuDefinition def = mapDefinitions.get(key);
+    if(def != null && !def.isModified())
+      return def;
+
+    synchronized(mapDefinitions)
+    {
+      def = mapDefinitions.get(key);
+      if(def == null || def.isModified())
+      {
+        log.info("Leggo " + fxml.getAbsolutePath());
+        def = new MenuDefinition(fxml, new SAXBuilder().build(fxml));
+        mapDefinitions.put(key, def);
+        mapMenus.clear();
+      }
+    }
+
+    return def;
+  }
+
+  /**
+   * Calcola l'impronta dei permessi della sessione per il menu indicato.
+   * I controlli usano la cache permessi di sessione del servizio di sicurezza.
+   * @param def definizione del menu
+   * @param data dati della richiesta
+   * @param language lingua dell'utente
+   * @return impronta
+   * @throws Exception
+   */
+  public static String getFingerprint(MenuDefinition def, RunData data, String language)
+     throws Exception
+  {
+    List<String> perms = def.permissions;
+    StringBuilder sb = new StringBuilder(def.source.getAbsolutePath().length() + perms.size() + 32);
+    sb.append(def.source.getAbsolutePath()).append('|').append(def.lastModified)
+       .append('|').append(language).append('|');
+
+    for(String p : perms)
+      sb.append(SEC.checkAnyPermission(data, p) ? '1' : '0');
+
+    return sb.toString();
+  }
+
+  /**
+   * Ritorna il menu condiviso per l'impronta indicata.
+   * @param fingerprint impronta dei permessi (vedi getFingerprint)
+   * @return menu condiviso oppure null se non ancora costruito
+   */
+  public static SharedMenu getMenu(String fingerprint)
+  {
+    SharedMenu sm = mapMenus.get(fingerprint);
+    if(sm == null)
+      misses.incrementAndGet();
+    else
+      hits.incrementAndGet();
+    return sm;
+  }
+
+  /**
+   * Memorizza un menu condiviso.
+   * @param fingerprint impronta dei permessi
+   * @param padre radice dell'albero (non verrà più modificata)
+   * @return menu condiviso (quello già presente se costruito nel frattempo da un'altra sessione)
+   */
+  public static SharedMenu putMenu(String fingerprint, CoreMenuTreeNode padre)
+  {
+    if(mapMenus.size() >= maxEntries)
+      mapMenus.clear();
+
+    SharedMenu sm = new SharedMenu(padre);
+    SharedMenu prev = mapMenus.putIfAbsent(fingerprint, sm);
+    return prev == null ? sm : prev;
+  }
+
+  /**
+   * Svuota la cache: alla prossima richiesta i menu vengono riletti e ricostruiti.
+   */
+  public static void clear()
+  {
+    synchronized(mapDefinitions)
+    {
+      mapDefinitions.clear();
+      mapMenus.clear();
+    }
+  }
+
+  /**
+   * Ritorna le statistiche di utilizzo come stringa.
+   * @return statistiche
+   */
+  public static String getStatistics()
+  {
+    return String.format("MenuTreeCache definitions=%d menus=%d hits=%d misses=%d",
+       mapDefinitions.size(), mapMenus.size(), hits.get(), misses.get());
+  }
+}
@@ -20,6 +20,10 @@ package org.sirio5.beans.menu;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.servlet.http.HttpServletRequest;
 import org.apache.turbine.Turbine;
 import org.apache.turbine.util.RunData;
@@ -51,6 +55,9 @@ abstract public class menuBean extends CoreBaseBean
   protected boolean USE_ANCHOR = false;
   protected String baseFormUrl, baseListUrl, baseFormPopup, baseListPopup, home;
   protected String htmlMenu = null;
+  //
+  // classi dei generatori di sottomenu (Optional vuoto per classi non trovate)
+  private static final Map<String, Optional<Class>> generatorClasses = new ConcurrentHashMap<>();
 
   /** Creates a new instance of menuBean */
   public menuBean()
@@ -208,22 +215,25 @@ abstract public class menuBean extends CoreBaseBean
     prepareToRender(data);
 
     if(htmlMenu == null)
-    {
-      StringWriter swr = new StringWriter(1024);
-      printJavascriptMenu((CoreRunData) data, swr);
-      swr.flush();
-      htmlMenu = swr.toString();
-    }
+      htmlMenu = renderHtml(data);
 
     return htmlMenu;
   }
 
+  protected String renderHtml(RunData data)
+     throws Exception
+  {
+    StringWriter swr = new StringWriter(1024);
+    printJavascriptMenu((CoreRunData) data, swr);
+    swr.flush();
+    return swr.toString();
+  }
+
   public void creaSottoMenu(String submenugen, RunData data, int livello,
      Element elPadre, CoreMenuTreeNode node)
      throws Exception
   {
-    Class subGenClass = ClassOper.loadClass(submenugen,
-       ClassOper.getClassPackage(MenuGenerator.class), getMoreClasspaths());
+    Class subGenClass = getGeneratorClass(submenugen);
 
     if(subGenClass == null)
       return;
@@ -234,6 +244,44 @@ abstract public class menuBean extends CoreBaseBean
     mg.creaSottoMenu(submenugen, data, livello, elPadre, node);
   }
 
+  /**
+   * Ritorna la classe del generatore di sottomenu.
+   * La ricerca della classe viene eseguita una sola volta.
+   * @param submenugen nome indicato per la generazione nell'XML
+   * @return classe del generatore oppure null se non trovata
+   */
+  public Class getGeneratorClass(String submenugen)
+  {
+    String[] morePaths = getMoreClasspaths();
+    String key = submenugen + "|" + Arrays.toString(morePaths);
+    return generatorClasses.computeIfAbsent(key, (k) ->
+    {
+      try
+      {
+        return Optional.ofNullable(ClassOper.loadClass(submenugen,
+           ClassOper.getClassPackage(MenuGenerator.class), morePaths));
+      }
+      catch(Throwable t)
+      {
+        log.error("Generatore di menu " + submenugen + " non disponibile.", t);
+        return Optional.empty();
+      }
+    }).orElse(null);
+  }
+
+  /**
+   * Verifica se le voci prodotte dal generatore possono essere condivise fra sessioni.
+   * @param submenugen nome indicato per la generazione nell'XML
+   * @return vero se il generatore è condivisibile (vedi MenuGenerator.isCacheable())
+   * @throws Exception
+   */
+  public boolean isGeneratorCacheable(String submenugen)
+     throws Exception
+  {
+    Class subGenClass = getGeneratorClass(submenugen);
+    return subGenClass == null || ((MenuGenerator) subGenClass.newInstance()).isCacheable();
+  }
+
   public CoreMenuTreeNode getPadre()
   {
     return padre;
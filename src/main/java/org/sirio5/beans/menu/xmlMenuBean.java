@@ -20,6 +20,7 @@ package org.sirio5.beans.menu;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import javax.servlet.http.HttpServletRequest;
 import org.apache.turbine.util.RunData;
 import org.sirio5.CoreConst;
 import org.sirio5.services.modellixml.modelliXML;
@@ -41,6 +42,7 @@ public class xmlMenuBean extends menuBean
 {
   protected Document doc = null;
   protected modelliXML mdl = null;
+  protected MenuTreeCache.SharedMenu sharedMenu = null;
 
   @Override
   public void init(CoreRunData data)
@@ -55,6 +57,8 @@ public class xmlMenuBean extends menuBean
    * Il menu viene gestito con un file XML invece
    * che con una tabella di database come nella
    * versione precedente.
+   * Il file viene letto una sola volta per tutte le sessioni e l'albero
+   * viene condiviso fra le sessioni con gli stessi permessi (vedi MenuTreeCache).
    * @param data oggetto RunData al momento dell'invocazione
    * @throws Exception
    */
@@ -62,14 +66,88 @@ public class xmlMenuBean extends menuBean
   public void costruisciAlbero(RunData data)
      throws Exception
   {
-    if(doc == null)
-      doc = buildDocument();
+    HttpServletRequest request = data.getRequest();
+    if(request.getParameter("rileggi") != null || request.getParameter("reload") != null)
+      MenuTreeCache.clear();
 
+    MenuTreeCache.MenuDefinition def = MenuTreeCache.getDefinition(getMenuFile());
+    doc = def.doc;
+    sharedMenu = null;
+
+    if(!isSharable(def))
+    {
+      buildTree(data);
+      return;
+    }
+
+    String fingerprint = MenuTreeCache.getFingerprint(def, data,
+       ((CoreRunData) data).getUserLocale().toString());
+
+    if((sharedMenu = MenuTreeCache.getMenu(fingerprint)) == null)
+    {
+      buildTree(data);
+      sharedMenu = MenuTreeCache.putMenu(fingerprint, padre);
+    }
+
+    padre = sharedMenu.padre;
+  }
+
+  /**
+   * Costruisce l'albero del menu per la sessione corrente.
+   * @param data oggetto RunData al momento dell'invocazione
+   * @throws Exception
+   */
+  protected void buildTree(RunData data)
+     throws Exception
+  {
     Element el = doc.getRootElement();
     padre = new CoreMenuTreeNode(new MenuItemBean());
     cercaFigli(data, 0, el, padre);
   }
 
+  /**
+   * Verifica se il menu può essere condiviso fra sessioni.
+   * @param def definizione del menu
+   * @return vero se tutti i generatori di sottomenu sono condivisibili
+   * @throws Exception
+   */
+  protected boolean isSharable(MenuTreeCache.MenuDefinition def)
+     throws Exception
+  {
+    if(!TR.getBoolean("menu.cache.enabled", true))
+      return false;
+
+    for(String submenugen : def.generators)
+    {
+      if(!isGeneratorCacheable(submenugen))
+        return false;
+    }
+
+    return true;
+  }
+
+  @Override
+  public String getHtml(RunData data)
+     throws Exception
+  {
+    prepareToRender(data);
+
+    if(htmlMenu == null)
+    {
+      if(sharedMenu == null)
+        htmlMenu = renderHtml(data);
+      else
+      {
+        // la lingua fa parte dell'impronta: l'HTML è condivisibile
+        if(sharedMenu.html == null)
+          sharedMenu.html = renderHtml(data);
+        htmlMenu = sharedMenu.html;
+      }
+    }
+
+    return htmlMenu;
+  }
+
   public void cercaFigli(RunData data, int livello, Element elPadre, CoreMenuTreeNode node)
      throws Exception
   {
@@ -116,12 +194,16 @@ public class xmlMenuBean extends menuBean
     return new CoreMenuTreeNode(b);
   }
 
+  public File getMenuFile()
+  {
+    String sFileMenu = TR.getString("menu.file", "menu.xml");
+    return mdl.getConfMainFile(sFileMenu);
+  }
+
   public Document buildDocument()
      throws Exception
   {
-    String sFileMenu = TR.getString("menu.file", "menu.xml");
-    File fxml = mdl.getConfMainFile(sFileMenu);
-    return buildDocument(fxml);
+    return buildDocument(getMenuFile());
   }
 
   public Document buildDocument(File fxml)
@@ -99,7 +99,7 @@ public class jslistaxmlSqlBean implements HttpSessionBindingListener, MessageBus
       wl.setXtbl(new xTable());
 
     wl.init();
-    log.debug(INT.I("Creato nuovo SqlWrapperListaXml %s", type));
+    log.debug(INT.L("Creato nuovo SqlWrapperListaXml %s", type));
     return wl;
   }
 
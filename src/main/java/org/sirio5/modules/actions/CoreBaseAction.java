@@ -262,11 +262,8 @@ public class CoreBaseAction extends VelocitySecureAction
     CoreBaseBean bean = null;
     if(beanClass != null)
     {
-      synchronized(this)
-      {
-        bean = BeanFactory.getFromSession(data, beanClass);
-        context.put("bean", bean);
-      }
+      bean = BeanFactory.getFromSessionLocked(data, beanClass);
+      context.put("bean", bean);
     }
 
     doPerform2(data, context, bean);
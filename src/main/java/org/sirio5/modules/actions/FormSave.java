@@ -160,6 +160,7 @@ public class FormSave extends RigelEditBaseAction
       bc.setI18n(i18n);
       bc.put("obj", objInEdit);
       bc.put("isNewObject", isNewObject);
+      bc.put("tableName", pwl.getNomeTabella());
 
       BUS.sendMessageAsync(BusMessages.GENERIC_OBJECT_SAVED, this, bc);
     }
@@ -203,6 +204,7 @@ public class FormSave extends RigelEditBaseAction
       bc.setI18n(i18n);
       bc.put("obj", objInEdit);
       bc.put("isNewObject", isNewObject);
+      bc.put("tableName", pwl.getNomeTabella());
 
       BUS.sendMessageAsync(BusMessages.GENERIC_OBJECT_SAVED, this, bc);
     }
@@ -317,6 +319,7 @@ public class FormSave extends RigelEditBaseAction
         bc.setI18n(i18n);
         bc.put("obj", objInEdit);
         bc.put("details", objectsDetail);
+        bc.put("tableName", eh.getNomeTabella());
 
         BUS.sendMessageAsync(BusMessages.GENERIC_OBJECTS_SAVED, this, bc);
       }
@@ -141,6 +141,7 @@ public class ListaEditSave extends RigelEditBaseAction
         BusContext bc = new BusContext(params);
         bc.setI18n(new RigelHtmlI18n(data));
         bc.put("objsInEdit", ptm.getVBuf());
+        bc.put("tableName", eh.getNomeTabella());
 
         BUS.sendMessageAsync(BusMessages.GENERIC_OBJECTS_SAVED, this, bc);
       }
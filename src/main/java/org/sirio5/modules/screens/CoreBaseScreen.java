@@ -215,11 +215,8 @@ public class CoreBaseScreen extends VelocitySecureScreen
     CoreBaseBean bean = null;
     if(beanClass != null)
     {
-      synchronized(this)
-      {
-        bean = BeanFactory.getFromSession(data, beanClass);
-        context.put("bean", bean);
-      }
+      bean = BeanFactory.getFromSessionLocked(data, beanClass);
+      context.put("bean", bean);
     }
 
     doBuildTemplate2(data, context, bean);
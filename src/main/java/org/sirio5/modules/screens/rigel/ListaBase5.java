@@ -95,24 +95,30 @@ abstract public class ListaBase5 extends RigelEditBaseScreen
   {
     HtmlWrapperBase lso = getListaCache(data, li.type);
 
+    // i controlli sui permessi leggono solo la definizione della lista
+    // e possono essere eseguiti fuori dal lock sul wrapper
+    if(!RigelUtils.checkPermessiLettura(data, lso))
+    {
+      // permessi della lista non posseduti dall'utente
+      redirectUnauthorized(data);
+      return;
+    }
+
+    String baseUri = makeSelfUrl(data, li.type);
+    String cmd = data.getParameters().getString("command");
+    boolean cancella = cmd != null && cmd.equals("cancella");
+
+    if(cancella && (!isAuthorizedDelete(data) || !RigelUtils.checkPermessiCancellazione(data, lso)))
+      throw new Exception(data.i18n("Tentativo di cancellazione senza credenziali sufficienti."));
+
+    // il wrapper appartiene alla cache di sessione: il lock serializza
+    // solo richieste concorrenti della stessa sessione sulla stessa lista
     synchronized(lso)
     {
-      String baseUri = makeSelfUrl(data, li.type);
       ((AbstractHtmlTablePager) lso.getPager()).setBaseSelfUrl(baseUri);
 
-      if(!RigelUtils.checkPermessiLettura(data, lso))
+      if(cancella)
       {
-        // permessi della lista non posseduti dall'utente
-        redirectUnauthorized(data);
-        return;
-      }
-
-      String cmd = data.getParameters().getString("command");
-      if(cmd != null && cmd.equals("cancella"))
-      {
-        if(!isAuthorizedDelete(data) || !RigelUtils.checkPermessiCancellazione(data, lso))
-          throw new Exception(data.i18n("Tentativo di cancellazione senza credenziali sufficienti."));
-
         /*
          Con queste itruzioni la cancellazione diventa fisica:
          il record viene effettivamente rimosso dal database.
@@ -304,31 +310,29 @@ abstract public class ListaBase5 extends RigelEditBaseScreen
     Map<String, String> passThroughParam = new HashMap();
     String type = wl.getNome();
 
-    synchronized(wl)
+    // la definizione dei parametri viene solo letta: i valori finiscono in sessione
+    for(ParametroListe pl : wl.getFiltro().getParametri())
     {
-      for(ParametroListe pl : wl.getFiltro().getParametri())
-      {
-        Object val = param.get(pl.getHtmlCampo());
-        if(val == null)
-          val = param.get(type + pl.getHtmlCampo());
-
-        if(val != null)
-        {
-          SU.saveParam(session, type + pl.getHtmlCampo(), val);
-          passThroughParam.put(pl.getHtmlCampo(), SU.okStr(val));
-        }
+      Object val = param.get(pl.getHtmlCampo());
+      if(val == null)
+        val = param.get(type + pl.getHtmlCampo());
 
-        log.debug("par=" + pl.getNome() + "(" + pl.getCampo() + ") [" + pl.getHtmlCampo() + "] val=" + val);
+      if(val != null)
+      {
+        SU.saveParam(session, type + pl.getHtmlCampo(), val);
+        passThroughParam.put(pl.getHtmlCampo(), SU.okStr(val));
       }
 
-      if(wl.ssp.getGroupby() != null)
+      log.debug("par=" + pl.getNome() + "(" + pl.getCampo() + ") [" + pl.getHtmlCampo() + "] val=" + val);
+    }
+
+    if(wl.ssp.getGroupby() != null)
+    {
+      for(ParametroListe pl : wl.ssp.getGroupby().filtro.getParametri())
       {
-        for(ParametroListe pl : wl.ssp.getGroupby().filtro.getParametri())
-        {
-          Object val = param.get(pl.getHtmlCampo());
-          SU.saveParam(session, pl.getHtmlCampo(), val);
-          log.debug("par=" + pl.getNome() + "(" + pl.getCampo() + ") [" + pl.getHtmlCampo() + "] val=" + val);
-        }
+        Object val = param.get(pl.getHtmlCampo());
+        SU.saveParam(session, pl.getHtmlCampo(), val);
+        log.debug("par=" + pl.getNome() + "(" + pl.getCampo() + ") [" + pl.getHtmlCampo() + "] val=" + val);
       }
     }
 
@@ -66,39 +66,44 @@ abstract public class ListaEditBase extends RigelEditBaseScreen
     extraParams.put("jlc", type);
     extraParams.put("jvm", ClassOper.getClassName(getClass()) + ".vm");
 
-    synchronized(eh)
+    // parametri e permessi leggono solo la definizione della lista
+    // e possono essere elaborati fuori dal lock sul wrapper
+    parseParamLista(eh, params, session);
+
+    String cmd = data.getParameters().getString("command"); // NOI18N
+    if(cmd != null)
     {
-      parseParamLista(eh, params, session);
-      ((AbstractHtmlTablePager) eh.getPager()).setBaseSelfUrl(baseUri);
+      if(cmd.equals(CoreConst.SAVE_AND_NEW))
+        forceNew = true;
+      if(cmd.equals(CoreConst.DUP_CURRENT))
+        forceNew = duplica = true;
+    }
 
-      String cmd = data.getParameters().getString("command"); // NOI18N
-      if(cmd != null)
-      {
-        if(cmd.equals(CoreConst.SAVE_AND_NEW))
-          forceNew = true;
-        if(cmd.equals(CoreConst.DUP_CURRENT))
-          forceNew = duplica = true;
-      }
+    if(!RigelUtils.checkPermessiLettura(data, eh))
+    {
+      // permessi della lista non posseduti dall'utente
+      redirectUnauthorized(data);
+      return;
+    }
 
-      if(!RigelUtils.checkPermessiLettura(data, eh))
+    if(forceNew || SU.isOkStr(data.getParameters().getString("new"))) // NOI18N
+    {
+      if(!eh.isNewEnabled())
+        throw new Exception(data.i18n("Creazione nuovi oggetti non consentita."));
+
+      if(!RigelUtils.checkPermessiCreazione(data, eh))
       {
         // permessi della lista non posseduti dall'utente
         redirectUnauthorized(data);
         return;
       }
+    }
 
-      if(forceNew || SU.isOkStr(data.getParameters().getString("new"))) // NOI18N
-      {
-        if(!eh.isNewEnabled())
-          throw new Exception(data.i18n("Creazione nuovi oggetti non consentita."));
-
-        if(!RigelUtils.checkPermessiCreazione(data, eh))
-        {
-          // permessi della lista non posseduti dall'utente
-          redirectUnauthorized(data);
-          return;
-        }
-      }
+    // il wrapper appartiene alla cache di sessione: il lock serializza
+    // solo richieste concorrenti della stessa sessione sulla stessa lista
+    synchronized(eh)
+    {
+      ((AbstractHtmlTablePager) eh.getPager()).setBaseSelfUrl(baseUri);
 
       html = getHtmlEdit(data, context, eh, params, session, false, extraParams);
       scTest = getScriptTest(data, context, eh, params, session, false);
@@ -157,22 +162,19 @@ abstract public class ListaEditBase extends RigelEditBaseScreen
     String passThroughParam = "";
     String type = wl.getNome();
 
-    synchronized(wl)
+    for(ParametroListe pl : wl.getFiltro().getParametri())
     {
-      for(ParametroListe pl : wl.getFiltro().getParametri())
+      Object val = param.get(pl.getHtmlCampo());
+      if(val == null)
+        val = param.get(type + pl.getHtmlCampo());
+
+      if(val != null)
       {
-        Object val = param.get(pl.getHtmlCampo());
-        if(val == null)
-          val = param.get(type + pl.getHtmlCampo());
-
-        if(val != null)
-        {
-//          pl.setValore(val.toString());
-          SU.saveParam(session, type + pl.getHtmlCampo(), val);
-          passThroughParam += "&" + pl.getHtmlCampo() + "=" + val;
-        }
-        log.debug("par=" + pl.getNome() + "(" + pl.getCampo() + ") [" + pl.getHtmlCampo() + "] val=" + pl.getValore());
+//        pl.setValore(val.toString());
+        SU.saveParam(session, type + pl.getHtmlCampo(), val);
+        passThroughParam += "&" + pl.getHtmlCampo() + "=" + val;
       }
+      log.debug("par=" + pl.getNome() + "(" + pl.getCampo() + ") [" + pl.getHtmlCampo() + "] val=" + pl.getValore());
     }
 
     return passThroughParam;
@@ -18,11 +18,15 @@
 package org.sirio5.rigel;
 
 import java.sql.Connection;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.torque.om.Persistent;
 import org.apache.turbine.om.security.User;
+import org.rigel5.db.torque.PeerTransactAgent;
 
 /**
  * Salvataggio di oggetti Peer.
@@ -35,7 +39,7 @@ public class CachedObjectSaver
   public static final int WRITE_LEVEL_FORCE = -1;
   public static final String WRITE_LEVEL_PERM_STORAGE = "WRITE_LEVEL_PERM_STORAGE";
 
-  private static final HashMap<Class, CoreObjectSaver> htCache = new HashMap<Class, CoreObjectSaver>();
+  private static final Map<Class, CoreObjectSaver> htCache = new ConcurrentHashMap<>();
 
   /**
    * Recupera un oggetto saver adatto al salvataggio del Persistent specificato.
@@ -67,18 +71,14 @@ public class CachedObjectSaver
     if(ps != null)
       return ps;
 
-    synchronized(htCache)
-    {
-      if((ps = htCache.get(peerObjectClass)) == null)
-      {
-        String peerClassName = peerObjectClass.getName() + "Peer";
-        ps = new CoreObjectSaver(peerObjectClass, Class.forName(peerClassName));
-        htCache.put(peerObjectClass, ps);
-      }
-      return ps;
-    }
+    String peerClassName = peerObjectClass.getName() + "Peer";
+    ps = new CoreObjectSaver(peerObjectClass, Class.forName(peerClassName));
+
+    CoreObjectSaver prev = htCache.putIfAbsent(peerObjectClass, ps);
+    return prev == null ? ps : prev;
   }
 
+
   /**
    * Salva l'oggetto peer utilizzando un PeerObjectSaver.
    * Il salvataggio diventa compatbile per la multiutenza
@@ -256,33 +256,26 @@ public class CachedObjectSaver
     if(toSave == null || toSave.isEmpty())
       return;
 
-    boolean first = true;
-    CoreObjectSaver ps = null;
-
+    // NON APPLICABILE: la modifica potrebbe riguardare il cambio di statorec; quindi è necessario procedere
+    // if(!obj.isModified())
+    //   continue;
+    List<Persistent> lsObj = new ArrayList<>(toSave.size());
     for(Object ob : toSave)
     {
-      if(ob == null)
-        continue;
-
       if(ob instanceof Persistent)
-      {
-        Persistent obj = (Persistent) ob;
+        lsObj.add((Persistent) ob);
+    }
 
-        // NON APPLICABILE: la modifica potrebbe riguardare il cambio di statorec; quindi è necessario procedere
-        // if(!obj.isModified())
-        //   continue;
-        if(first)
-        {
-          ps = getObjectSaver(obj);
-          first = false;
-        }
+    if(lsObj.isEmpty())
+      return;
 
-        if(con == null)
-          ps.salva(obj, idUser, newStatoRec, writeLevel);
-        else
-          ps.salva(obj, con, idUser, newStatoRec, writeLevel);
-      }
-    }
+    // il saver è quello del primo oggetto: i record precedenti vengono letti in blocco
+    CoreObjectSaver ps = getObjectSaver(lsObj.get(0));
+
+    if(con == null)
+      PeerTransactAgent.execute((dbCon) -> ps.salvaCollection(lsObj, dbCon, idUser, newStatoRec, writeLevel));
+    else
+      ps.salvaCollection(lsObj, con, idUser, newStatoRec, writeLevel);
   }
 
   /**
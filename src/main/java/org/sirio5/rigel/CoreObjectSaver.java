@@ -19,7 +19,12 @@ package org.sirio5.rigel;
 
 import java.lang.reflect.Method;
 import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import javax.servlet.http.HttpSession;
 import org.apache.torque.om.NumberKey;
@@ -49,12 +54,16 @@ public class CoreObjectSaver implements PeerObjectSaver
   protected Class objectClass, peerClass;
   protected Method setIdAziendaM, setIdApplicativiM, getIdUserM, setIdUserM, setIdUcreaM,
      getStatoRecM, setStatoRecM, getUltModifM, setUltModifM, retrieveByPKM, setCreazioneM,
-     getUuidM, setUuidM;
+     getUuidM, setUuidM, retrieveByPKsM;
+  protected PersistentAuditAccessors acc = PersistentAuditAccessors.get(Object.class);
   protected int idAzienda, idApplicativo;
   protected int idUser = 0;
   protected boolean isAdmin = false;
   protected boolean strict = false;
   protected boolean ignoreWl = false;
+  //
+  // numero massimo di chiavi per ogni query di recupero in salvaCollection()
+  public static final int PREFETCH_CHUNK = 500;
 
   /**
    * Costruttore per classi derivate.
@@ -147,8 +156,32 @@ public class CoreObjectSaver implements PeerObjectSaver
     setCreazioneM = getObjectMethod("setCreazione", java.util.Date.class);
     retrieveByPKM = getPeerMethod("retrieveByPK", org.apache.torque.om.ObjectKey.class, java.sql.Connection.class);
 
+    if((retrieveByPKsM = getPeerMethod("retrieveByPKs", Collection.class, Connection.class)) == null)
+      retrieveByPKsM = getPeerMethod("retrieveByObjectKeys", Collection.class, Connection.class);
+
     getUuidM = getObjectMethod("getUuid");
     setUuidM = getObjectMethod("setUuid", String.class);
+
+    // accessori veloci ai campi di controllo (condivisi per classe)
+    refreshAccessors();
+  }
+
+  /**
+   * Ricostruisce gli accessori veloci ai campi di controllo.
+   * Gli accessori sono costruiti sugli stessi metodi usati dai controlli
+   * (getStatoRecM, getUltModifM, ecc.); viene chiamata al termine di init():
+   * una classe derivata che sostituisce questi campi dopo init()
+   * deve chiamarla di nuovo.
+   */
+  protected void refreshAccessors()
+  {
+    Method[] methods =
+    {
+      setIdAziendaM, setIdApplicativiM, getIdUserM, setIdUserM, setIdUcreaM,
+      getStatoRecM, setStatoRecM, getUltModifM, setUltModifM, setCreazioneM, getUuidM, setUuidM
+    };
+
+    acc = PersistentAuditAccessors.get(objectClass, methods);
   }
 
   /**
@@ -243,6 +276,55 @@ public class CoreObjectSaver implements PeerObjectSaver
     }
   }
 
+  /**
+   * Recupera dal database i record corrispondenti agli oggetti indicati.
+   * Le chiavi vengono suddivise in blocchi di PREFETCH_CHUNK per query.
+   * @param lsObj oggetti di cui recuperare lo stato sul database
+   * @param con connessione al db
+   * @return mappa chiave primaria/record sul database
+   * @throws Exception
+   */
+  protected Map<ObjectKey, Persistent> caricaElems(Collection<? extends Persistent> lsObj, Connection con)
+     throws Exception
+  {
+    Map<ObjectKey, Persistent> rv = new HashMap<>();
+    List<ObjectKey> chunk = new ArrayList<>(PREFETCH_CHUNK);
+
+    for(Persistent obj : lsObj)
+    {
+      ObjectKey pKey = obj.getPrimaryKey();
+      if(pKey == null)
+        continue;
+
+      // il valore 0 viene considerato come nullo (vedi caricaElem)
+      if(pKey instanceof NumberKey && ((NumberKey) (pKey)).longValue() == 0)
+        continue;
+
+      chunk.add(pKey);
+      if(chunk.size() >= PREFETCH_CHUNK)
+      {
+        caricaElems(chunk, con, rv);
+        chunk.clear();
+      }
+    }
+
+    if(!chunk.isEmpty())
+      caricaElems(chunk, con, rv);
+
+    return rv;
+  }
+
+  private void caricaElems(List<ObjectKey> keys, Connection con, Map<ObjectKey, Persistent> rv)
+     throws Exception
+  {
+    List lsPrev = (List) retrieveByPKsM.invoke(null, keys, con);
+    for(Object o : lsPrev)
+    {
+      Persistent p = (Persistent) o;
+      rv.put(p.getPrimaryKey(), p);
+    }
+  }
+
   /**
    * Recupera ultimo utente che ha modificato il record.
    * @param obj l'oggetto di interesse
@@ -252,7 +334,7 @@ public class CoreObjectSaver implements PeerObjectSaver
   {
     try
     {
-      return ((Integer) (getIdUserM.invoke(obj)));
+      return ((Integer) (PersistentAuditAccessors.getValue(acc.getIdUser, obj)));
     }
     catch(Exception ex)
     {
@@ -269,7 +351,7 @@ public class CoreObjectSaver implements PeerObjectSaver
   {
     try
     {
-      return ((Integer) (getStatoRecM.invoke(obj)));
+      return ((Integer) (PersistentAuditAccessors.getValue(acc.getStatoRec, obj)));
     }
     catch(Exception ex)
     {
@@ -286,7 +368,7 @@ public class CoreObjectSaver implements PeerObjectSaver
   {
     try
     {
-      return (Date) (getUltModifM.invoke(obj));
+      return (Date) (PersistentAuditAccessors.getValue(acc.getUltModif, obj));
     }
     catch(Exception ex)
     {
@@ -304,7 +386,7 @@ public class CoreObjectSaver implements PeerObjectSaver
   {
     try
     {
-      return SU.okStrNull(getUuidM.invoke(obj));
+      return SU.okStrNull(PersistentAuditAccessors.getValue(acc.getUuid, obj));
     }
     catch(Exception ex)
     {
@@ -412,55 +494,116 @@ public class CoreObjectSaver implements PeerObjectSaver
   public void salva(Persistent obj, Connection dbCon, int userID, int statoRecNew, int writeLevel)
      throws Exception
   {
-    boolean adminFlag = userID == 0;
-
-    if(!((getStatoRecM == null && getUltModifM == null) || retrieveByPKM == null))
+    if(isCheckRequired())
     {
       // recupero del record dal database
       // attraverso la sua chiave primaria
       ObjectKey pKey = obj.getPrimaryKey();
 
       if(pKey != null)
+        checkPrevious(obj, caricaElem(pKey, dbCon), userID, writeLevel);
+    }
+
+    saveObject(obj, dbCon, userID, statoRecNew);
+  }
+
+  /**
+   * Salva una collezione di oggetti sul database.
+   * Esegue gli stessi controlli di salva() ma i record precedenti vengono
+   * recuperati con poche query a chiavi multiple (al massimo PREFETCH_CHUNK chiavi
+   * per query) invece che con una query per ogni oggetto; i controlli
+   * vengono poi eseguiti in memoria prima di iniziare a scrivere.
+   * Tutti gli oggetti devono essere della classe gestita da questo saver.
+   * @param lsObj oggetti da salvare
+   * @param dbCon connessione SQL
+   * @param userID utente che esegue il salvataggio
+   * @param statoRecNew lo stato del record da impostare
+   * @param writeLevel livello di scrittura posseduto dall'utente
+   * @throws Exception
+   */
+  public void salvaCollection(Collection<? extends Persistent> lsObj, Connection dbCon,
+     int userID, int statoRecNew, int writeLevel)
+     throws Exception
+  {
+    if(isCheckRequired())
+    {
+      if(retrieveByPKsM == null)
       {
-        Persistent prev = caricaElem(pKey, dbCon);
-
-        // controlli sullo stato precedente del record
-        if(prev != null && writeLevel != -1)
-        {
-          if(!ignoreWl && getStatoRecM != null)
-          {
-            int statoRec = getStatoRec(prev) % 10;
-            if(statoRec > writeLevel && !adminFlag)
-              throw new UnmodificableRecordException(
-                 "Table:" + objectClass.getName() + " Key:" + pKey + " WL:" + statoRec + " UL:" + writeLevel); // NOI18N
-          }
-
-          if(getUltModifM != null)
-          {
-            Date objUM = getUltModif(obj);
-            Date prevUM = getUltModif(prev);
-
-            if(objUM != null && prevUM != null && !isEquals(objUM, prevUM))
-            {
-              // il record è stato modificato sul db rispetto a quello che si sta salvando!!
-
-              // se la modalità strict è attiva questo è sufficiente a sollevare l'errore ...
-              if(strict || getIdUserM == null)
-                throw new ConcurrentDatabaseModificationException(
-                   "Table:" + objectClass.getName() + " Key:" + pKey); // NOI18N
-
-              // ... altrimenti controlla che l'utente sia diverso per sollevare l'errore
-              int userIDprev = getIdUser(prev);
-              if(userID != userIDprev)
-                throw new ConcurrentDatabaseModificationException(
-                   "Table:" + objectClass.getName() + " Key:" + pKey + " User:" + userIDprev); // NOI18N
-            }
-          }
-        }
+        // il peer non supporta il recupero multiplo: controlli record per record
+        for(Persistent obj : lsObj)
+          salva(obj, dbCon, userID, statoRecNew, writeLevel);
+        return;
+      }
+
+      Map<ObjectKey, Persistent> mapPrev = caricaElems(lsObj, dbCon);
+      for(Persistent obj : lsObj)
+      {
+        ObjectKey pKey = obj.getPrimaryKey();
+        if(pKey != null)
+          checkPrevious(obj, mapPrev.get(pKey), userID, writeLevel);
       }
     }
 
-    saveObject(obj, dbCon, userID, statoRecNew);
+    for(Persistent obj : lsObj)
+      saveObject(obj, dbCon, userID, statoRecNew);
+  }
+
+  /**
+   * Verifica se il salvataggio richiede il controllo del record precedente.
+   * @return vero se l'oggetto ha stato_rec o ult_modif e può essere recuperato dal db
+   */
+  protected boolean isCheckRequired()
+  {
+    return !((getStatoRecM == null && getUltModifM == null) || retrieveByPKM == null);
+  }
+
+  /**
+   * Controlli sullo stato precedente del record.
+   * @param obj oggetto da salvare
+   * @param prev record attualmente sul database (null se non esiste)
+   * @param userID utente che esegue il salvataggio
+   * @param writeLevel livello di scrittura posseduto dall'utente
+   * @throws Exception
+   */
+  protected void checkPrevious(Persistent obj, Persistent prev, int userID, int writeLevel)
+     throws Exception
+  {
+    boolean adminFlag = userID == 0;
+
+    if(prev == null || writeLevel == -1)
+      return;
+
+    ObjectKey pKey = obj.getPrimaryKey();
+
+    if(!ignoreWl && getStatoRecM != null)
+    {
+      int statoRec = getStatoRec(prev) % 10;
+      if(statoRec > writeLevel && !adminFlag)
+        throw new UnmodificableRecordException(
+           "Table:" + objectClass.getName() + " Key:" + pKey + " WL:" + statoRec + " UL:" + writeLevel); // NOI18N
+    }
+
+    if(getUltModifM != null)
+    {
+      Date objUM = getUltModif(obj);
+      Date prevUM = getUltModif(prev);
+
+      if(objUM != null && prevUM != null && !isEquals(objUM, prevUM))
+      {
+        // il record è stato modificato sul db rispetto a quello che si sta salvando!!
+
+        // se la modalità strict è attiva questo è sufficiente a sollevare l'errore ...
+        if(strict || getIdUserM == null)
+          throw new ConcurrentDatabaseModificationException(
+             "Table:" + objectClass.getName() + " Key:" + pKey); // NOI18N
+
+        // ... altrimenti controlla che l'utente sia diverso per sollevare l'errore
+        int userIDprev = getIdUser(prev);
+        if(userID != userIDprev)
+          throw new ConcurrentDatabaseModificationException(
+             "Table:" + objectClass.getName() + " Key:" + pKey + " User:" + userIDprev); // NOI18N
+      }
+    }
   }
 
   /**
@@ -476,37 +619,39 @@ public class CoreObjectSaver implements PeerObjectSaver
   protected void saveObject(Persistent obj, Connection dbCon, int userID, int statoRecNew)
      throws Exception
   {
+    PersistentAuditAccessors pa = acc;
+
     // se il peer lo richiede imposta il codice azienda
-    if(setIdAziendaM != null && obj.isNew())
-      setIdAziendaM.invoke(obj, idAzienda);
+    if(pa.setIdAzienda != null && obj.isNew())
+      PersistentAuditAccessors.setInt(pa.setIdAzienda, obj, idAzienda);
 
     // se il peer lo richiede imposta il codice applicativo
-    if(setIdApplicativiM != null && obj.isNew())
-      setIdApplicativiM.invoke(obj, idApplicativo);
+    if(pa.setIdApplicativi != null && obj.isNew())
+      PersistentAuditAccessors.setInt(pa.setIdApplicativi, obj, idApplicativo);
 
     // se il peer lo richiede imposta statorec
-    if(setStatoRecM != null)
-      setStatoRecM.invoke(obj, statoRecNew);
+    if(pa.setStatoRec != null)
+      PersistentAuditAccessors.setInt(pa.setStatoRec, obj, statoRecNew);
 
     // se il peer lo richiede imposta utente modifica
-    if(setIdUserM != null)
-      setIdUserM.invoke(obj, userID);
+    if(pa.setIdUser != null)
+      PersistentAuditAccessors.setInt(pa.setIdUser, obj, userID);
 
     // se il peer lo richiede imposta ultima modifica
-    if(setUltModifM != null)
-      setUltModifM.invoke(obj, new Date());
+    if(pa.setUltModif != null)
+      PersistentAuditAccessors.setObject(pa.setUltModif, obj, new Date());
 
     // se il peer lo richiede imposta data di creazione
-    if(setCreazioneM != null && obj.isNew())
-      setCreazioneM.invoke(obj, new Date());
+    if(pa.setCreazione != null && obj.isNew())
+      PersistentAuditAccessors.setObject(pa.setCreazione, obj, new Date());
 
     // se il peer lo richiede imposta utente creazione
-    if(setIdUcreaM != null && obj.isNew())
-      setIdUcreaM.invoke(obj, userID);
+    if(pa.setIdUcrea != null && obj.isNew())
+      PersistentAuditAccessors.setInt(pa.setIdUcrea, obj, userID);
 
     // crea un UUID se necessario
-    if(getUuidM != null && setUuidM != null && getUuid(obj) == null)
-      setUuidM.invoke(obj, UUID.randomUUID().toString().toUpperCase());
+    if(pa.getUuid != null && pa.setUuid != null && getUuid(obj) == null)
+      PersistentAuditAccessors.setObject(pa.setUuid, obj, UUID.randomUUID().toString().toUpperCase());
 
     obj.save(dbCon);
   }
@@ -523,48 +668,39 @@ public class CoreObjectSaver implements PeerObjectSaver
   public void clearNewObject(Persistent obj)
      throws Exception
   {
+    PersistentAuditAccessors pa = acc;
+
     // se il peer lo richiede imposta il codice azienda
-    if(setIdAziendaM != null)
-      setIdAziendaM.invoke(obj, 0);
+    if(pa.setIdAzienda != null)
+      PersistentAuditAccessors.setInt(pa.setIdAzienda, obj, 0);
 
     // se il peer lo richiede imposta il codice applicativo
-    if(setIdApplicativiM != null)
-      setIdApplicativiM.invoke(obj, 0);
+    if(pa.setIdApplicativi != null)
+      PersistentAuditAccessors.setInt(pa.setIdApplicativi, obj, 0);
 
     // se il peer lo richiede imposta statorec
-    if(setStatoRecM != null)
-      setStatoRecM.invoke(obj, 0);
+    if(pa.setStatoRec != null)
+      PersistentAuditAccessors.setInt(pa.setStatoRec, obj, 0);
 
     // se il peer lo richiede imposta utente modifica
-    if(setIdUserM != null)
-      setIdUserM.invoke(obj, 0);
+    if(pa.setIdUser != null)
+      PersistentAuditAccessors.setInt(pa.setIdUser, obj, 0);
 
     // se il peer lo richiede imposta ultima modifica
-    if(setUltModifM != null)
-      clearField(obj, setUltModifM);
+    if(pa.setUltModif != null)
+      PersistentAuditAccessors.setObject(pa.setUltModif, obj, null);
 
     // se il peer lo richiede imposta data di creazione
-    if(setCreazioneM != null)
-      clearField(obj, setCreazioneM);
+    if(pa.setCreazione != null)
+      PersistentAuditAccessors.setObject(pa.setCreazione, obj, null);
 
     // se il peer lo richiede imposta utente creazione
-    if(setIdUcreaM != null)
-      setIdUcreaM.invoke(obj, 0);
+    if(pa.setIdUcrea != null)
+      PersistentAuditAccessors.setInt(pa.setIdUcrea, obj, 0);
 
     // crea un UUID se necessario
-    if(setUuidM != null)
-      clearField(obj, setUuidM);
-  }
-
-  protected void clearField(Persistent obj, Method setMet)
-     throws Exception
-  {
-    Object[] args =
-    {
-      null
-    };
-
-    setMet.invoke(obj, args);
+    if(pa.setUuid != null)
+      PersistentAuditAccessors.setObject(pa.setUuid, obj, null);
   }
 
   protected boolean isEquals(Date d1, Date d2)
@@ -52,6 +52,13 @@ public class CoreTurbineWrapperCache extends WrapperCacheBase
   /** proprieta da passare nei table model */
   protected final Map<String, String> properties = new HashMap<>();
   protected User tuser;
+  /** versione delle definizioni (ModelliXMLRegistry.contentVersion) con cui sono costruiti i wrapper */
+  protected long registryVersion;
+  /** path di ricerca delle classi (condivisa fra tutte le sessioni) */
+  private static final String[] BASE_PATH =
+  {
+    "org.sirio5.rigel.table" // NOI18N
+  };
 
   /**
    * Inizializzazione di questa cache oggetti rigel.
@@ -63,10 +70,7 @@ public class CoreTurbineWrapperCache extends WrapperCacheBase
     tagTabelleList = TR.getString("tag.tabelle.list", "TABLE WIDTH=\"100%\""); // NOI18N
     i18n = new RigelHtmlI18n((CoreRunData) data);
 
-    basePath = new String[]
-    {
-      "org.sirio5.rigel.table" // NOI18N
-    };
+    basePath = BASE_PATH;
 
     wrpBuilder = mdl;
     tuser = data.getUser();
@@ -109,6 +113,16 @@ public class CoreTurbineWrapperCache extends WrapperCacheBase
     return new HeditTableApp();
   }
 
+  public long getRegistryVersion()
+  {
+    return registryVersion;
+  }
+
+  public void setRegistryVersion(long registryVersion)
+  {
+    this.registryVersion = registryVersion;
+  }
+
   public Map<String, String> getProperties()
   {
     return Collections.unmodifiableMap(properties);
@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2026 Nicola De Nisco
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.sirio5.rigel;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import org.sirio5.services.bus.BUS;
+import org.sirio5.services.bus.BusContext;
+import org.sirio5.services.bus.BusMessages;
+import org.sirio5.utils.SU;
+import org.sirio5.utils.TR;
+
+/**
+ * Cache dei conteggi record per le datatable.
+ * La cache è disattivata per default (rigel.datatable.count.enabled):
+ * va attivata solo per le installazioni in cui le tabelle delle liste
+ * vengono modificate attraverso le form dell'applicazione.
+ * I conteggi (totale e filtrato) vengono memorizzati per chiave di filtro;
+ * un salvataggio segnalato sul bus messaggi invalida i conteggi delle viste
+ * che citano la tabella modificata (confronto per identificatore intero,
+ * non per sottostringa). Un tempo massimo di validità
+ * (rigel.datatable.count.ttl in secondi) limita comunque l'uso di valori vecchi
+ * per modifiche non segnalate sul bus.
+ * Opzionalmente, per le tabelle molto grandi (conteggio oltre
+ * rigel.datatable.count.staleThreshold, 0 = disattivato) le invalidazioni
+ * del bus vengono ignorate e il conteggio precedente resta in uso fino alla
+ * scadenza del tempo di validità. Non si tratta di una stima: il valore
+ * è l'ultimo conteggio esatto, eventualmente non aggiornato.
+ * Un conteggio stimato (statistiche del database o conteggio limitato)
+ * non è disponibile: la query di conteggio è costruita da rigel5
+ * (SqlTableModel.getTotalRecords) e non può essere racchiusa in un LIMIT.
+ * Raggiunto il numero massimo di conteggi vengono eliminati quelli
+ * usati meno di recente.
+ *
+ * @author Nicola De Nisco
+ */
+public class DatatableCountCache
+{
+  private static final Map<String, CountEntry> mapCount = new LinkedHashMap<String, CountEntry>(16, 0.75f, true)
+  {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, CountEntry> eldest)
+    {
+      return size() > maxEntries;
+    }
+  };
+  private static final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), stale = new AtomicLong();
+  private static volatile boolean initialized = false;
+  private static boolean enabled;
+  private static long ttlMillis, staleThreshold;
+  private static int maxEntries;
+
+  private DatatableCountCache()
+  {
+  }
+
+  private static class CountEntry
+  {
+    final long count;
+    final Set<String> identifiers;
+    final long created = System.currentTimeMillis();
+    volatile boolean valid = true;
+
+    public CountEntry(long count, String vista)
+    {
+      this.count = count;
+      this.identifiers = vista == null ? null : splitIdentifiers(vista);
+    }
+  }
+
+  /**
+   * Estrae gli identificatori SQL (maiuscoli) da una vista o da una select.
+   * I nomi qualificati (schema.tabella) producono sia il nome completo che le sue parti.
+   * @param sql testo della vista
+   * @return insieme degli identificatori
+   */
+  protected static Set<String> splitIdentifiers(String sql)
+  {
+    Set<String> rv = new HashSet<>();
+    for(String token : sql.toUpperCase().split("[^A-Z0-9_$#.\"]+"))
+    {
+      String t = token.replace("\"", "");
+      if(t.isEmpty())
+        continue;
+
+      rv.add(t);
+      if(t.indexOf('.') != -1)
+        Collections.addAll(rv, t.split("\\."));
+    }
+    return rv;
+  }
+
+  private static synchronized void init()
+  {
+    if(initialized)
+      return;
+
+    enabled = TR.getBoolean("rigel.datatable.count.enabled", false);
+    ttlMillis = TR.getInt("rigel.datatable.count.ttl", 300) * 1000L;
+    staleThreshold = TR.getLong("rigel.datatable.count.staleThreshold", 0);
+    maxEntries = TR.getInt("rigel.datatable.count.maxEntries", 5000);
+    BUS.registerEventListner(DatatableCountCache.class.getName(), DatatableCountCache::busMessage);
+    initialized = true;
+  }
+
+  private static int busMessage(int msgID, Object originator, BusContext context)
+     throws Exception
+  {
+    switch(msgID)
+    {
+      case BusMessages.GENERIC_OBJECT_SAVED:
+      case BusMessages.GENERIC_OBJECTS_SAVED:
+        invalidateTable(context == null ? null : context.getAsString("tableName"));
+        break;
+
+      case BusMessages.CLEAR_GLOBAL_CACHE:
+        clear();
+        break;
+    }
+
+    return 0;
+  }
+
+  /**
+   * Costruisce la chiave di un conteggio.
+   * @param parts componenti della chiave (tipo lista, filtri, utente, ...)
+   * @return chiave
+   */
+  public static String buildKey(Object... parts)
+  {
+    StringBuilder sb = new StringBuilder(128);
+    for(Object p : parts)
+      sb.append(p).append('|');
+    return sb.toString();
+  }
+
+  /**
+   * Ritorna il conteggio dalla cache o lo calcola.
+   * Con la cache disattivata il conteggio viene sempre calcolato.
+   * @param key chiave del conteggio (vedi buildKey)
+   * @param vista vista/tabella su cui si esegue il conteggio (per l'invalidazione)
+   * @param counter funzione di conteggio effettivo
+   * @return numero di record
+   * @throws Exception
+   */
+  public static long getCount(String key, String vista, Callable<Long> counter)
+     throws Exception
+  {
+    if(!initialized)
+      init();
+
+    if(!enabled)
+      return counter.call();
+
+    CountEntry ce;
+    synchronized(mapCount)
+    {
+      ce = mapCount.get(key);
+    }
+
+    if(ce != null)
+    {
+      boolean expired = ttlMillis > 0 && (System.currentTimeMillis() - ce.created) > ttlMillis;
+
+      if(!expired)
+      {
+        if(ce.valid)
+        {
+          hits.incrementAndGet();
+          return ce.count;
+        }
+
+        if(staleThreshold > 0 && ce.count >= staleThreshold)
+        {
+          // tabella molto grande: si accetta il valore precedente fino alla scadenza
+          stale.incrementAndGet();
+          return ce.count;
+        }
+      }
+    }
+
+    misses.incrementAndGet();
+    long count = counter.call();
+
+    // le chiavi dipendono dalla ricerca libera: oltre maxEntries vengono eliminati i conteggi meno usati
+    synchronized(mapCount)
+    {
+      mapCount.put(key, new CountEntry(count, vista));
+    }
+    return count;
+  }
+
+  /**
+   * Invalida i conteggi delle viste che utilizzano la tabella indicata.
+   * @param tableName nome della tabella (null per invalidare tutto)
+   * @return numero di conteggi invalidati
+   */
+  public static int invalidateTable(String tableName)
+  {
+    String tn = SU.okStrNull(tableName);
+    if(tn != null)
+      tn = tn.toUpperCase();
+
+    int count = 0;
+    long now = System.currentTimeMillis();
+    synchronized(mapCount)
+    {
+      for(Iterator<CountEntry> itr = mapCount.values().iterator(); itr.hasNext();)
+      {
+        CountEntry ce = itr.next();
+
+        // approfitta della scansione per eliminare i conteggi scaduti
+        if(ttlMillis > 0 && (now - ce.created) > ttlMillis)
+        {
+          itr.remove();
+          continue;
+        }
+
+        if(tn == null || ce.identifiers == null || ce.identifiers.contains(tn))
+        {
+          ce.valid = false;
+          count++;
+        }
+      }
+    }
+
+    return count;
+  }
+
+  /**
+   * Svuota la cache.
+   */
+  public static void clear()
+  {
+    synchronized(mapCount)
+    {
+      mapCount.clear();
+    }
+  }
+
+  /**
+   * Ritorna le statistiche di utilizzo come stringa.
+   * @return statistiche
+   */
+  public static String getStatistics()
+  {
+    int size;
+    synchronized(mapCount)
+    {
+      size = mapCount.size();
+    }
+
+    return String.format("DatatableCountCache enabled=%b entries=%d hits=%d misses=%d stale=%d",
+       enabled, size, hits.get(), misses.get(), stale.get());
+  }
+}
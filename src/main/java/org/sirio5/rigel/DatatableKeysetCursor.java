@@ -0,0 +1,374 @@
+/*
+ * Copyright (C) 2026 Nicola De Nisco
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.sirio5.rigel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.torque.util.Transaction;
+import org.commonlib5.utils.ArrayMap;
+import org.rigel5.table.RigelColumnDescriptor;
+import org.rigel5.table.sql.xml.SqlTableModel;
+import org.sirio5.utils.SU;
+
+/**
+ * Cursore per la paginazione keyset (seek) delle datatable server side.
+ * L'ordinamento richiesto dal client viene completato con la chiave primaria
+ * per renderlo stabile; al termine di ogni pagina i valori di ordinamento
+ * dell'ultima riga vengono codificati in un token restituito al client
+ * insieme ai dati. Il client rimanda il token con la richiesta successiva:
+ * se la pagina richiesta è quella immediatamente seguente (navigazione sequenziale)
+ * la query viene eseguita con una condizione sui valori del token invece che
+ * con OFFSET, evitando la scansione di tutte le righe precedenti.
+ * Il token è firmato (HMAC) insieme a filtro, ordinamento e dimensione pagina:
+ * un token alterato o relativo ad un'altra ricerca viene ignorato.
+ * Salti di pagina casuali, cambi di filtro o di ordinamento ricadono
+ * sulla paginazione con OFFSET.
+ * Le righe con colonne di ordinamento a NULL vengono incluse secondo
+ * l'ordinamento dei NULL dichiarato dal driver JDBC (DatabaseMetaData);
+ * se non è determinabile la paginazione usa sempre OFFSET.
+ * Se l'ultima riga letta contiene un NULL la pagina successiva usa OFFSET.
+ *
+ * @author Nicola De Nisco
+ */
+public class DatatableKeysetCursor
+{
+  private static final Log log = LogFactory.getLog(DatatableKeysetCursor.class);
+
+  /** ordinamento dei NULL: {ascendente, discendente} vero se i NULL seguono i valori */
+  private static volatile boolean[] nullsAfter = null;
+  private static volatile boolean nullsKnown = true;
+  /** chiave di firma dei token (valida per la vita della JVM) */
+  private static final byte[] hmacKey = new byte[32];
+
+  static
+  {
+    new SecureRandom().nextBytes(hmacKey);
+  }
+
+  private final int nextStart;
+  private final int[] keyCols;
+  private final boolean[] keyDesc;
+  private final Object[] lastValues;
+
+  private DatatableKeysetCursor(int nextStart, int[] keyCols, boolean[] keyDesc, Object[] lastValues)
+  {
+    this.nextStart = nextStart;
+    this.keyCols = keyCols;
+    this.keyDesc = keyDesc;
+    this.lastValues = lastValues;
+  }
+
+  /**
+   * Aggiunge la chiave primaria all'ordinamento richiesto.
+   * La chiave viene aggiunta come ultimo criterio (ascendente) se non già presente.
+   * @param stm table model della lista
+   * @param mapOrder ordinamento richiesto (colonna, direzione): viene modificato
+   * @return vero se la lista ha una chiave primaria utilizzabile
+   */
+  public static boolean addPrimaryKeyOrder(SqlTableModel stm, ArrayMap<Integer, Integer> mapOrder)
+  {
+    int count = 1;
+    for(Integer idir : mapOrder.values())
+      count = Math.max(count, (idir % 1000) + 1);
+
+    boolean found = false;
+    for(int i = 0; i < stm.getColumnCount(); i++)
+    {
+      RigelColumnDescriptor cd = stm.getColumn(i);
+      if(cd.isPrimaryKey())
+      {
+        found = true;
+        if(!mapOrder.containsKey(i))
+          mapOrder.put(i, count++);
+      }
+    }
+
+    return found;
+  }
+
+  /**
+   * Costruisce la firma di lista, filtro, ordinamento e dimensione pagina.
+   * Il token è valido solo fra pagine con la stessa firma.
+   * @param lista nome della lista
+   * @param search ricerca libera
+   * @param freeFilter filtro impostato dal tool
+   * @param mapOrder ordinamento richiesto
+   * @param limit dimensione della pagina
+   * @return firma
+   */
+  public static String buildSignature(String lista, String search, String freeFilter, ArrayMap<Integer, Integer> mapOrder, int limit)
+  {
+    StringBuilder sb = new StringBuilder(128);
+    sb.append(lista).append('|').append(search).append('|').append(freeFilter).append('|').append(limit);
+    for(Map.Entry<Integer, Integer> e : mapOrder.entrySet())
+      sb.append('|').append(e.getKey()).append('=').append(e.getValue());
+    return sb.toString();
+  }
+
+  /**
+   * Costruisce il cursore con i valori di ordinamento dell'ultima riga letta.
+   * @param stm table model della lista con i dati della pagina corrente
+   * @param mapOrder ordinamento (comprensivo della chiave primaria)
+   * @param start prima riga della pagina corrente
+   * @return cursore oppure null se i valori non sono utilizzabili in una condizione SQL
+   */
+  public static DatatableKeysetCursor fromPage(SqlTableModel stm, ArrayMap<Integer, Integer> mapOrder, int start)
+  {
+    int rows = stm.getRowCount();
+    if(rows == 0)
+      return null;
+
+    List<Map.Entry<Integer, Integer>> lsOrder = new ArrayList<>(mapOrder.entrySet());
+    lsOrder.sort(Comparator.comparingInt((e) -> e.getValue() % 1000));
+
+    int n = lsOrder.size();
+    int[] cols = new int[n];
+    boolean[] desc = new boolean[n];
+    Object[] values = new Object[n];
+
+    for(int i = 0; i < n; i++)
+    {
+      Map.Entry<Integer, Integer> e = lsOrder.get(i);
+      cols[i] = e.getKey();
+      desc[i] = e.getValue() > 1000;
+      values[i] = stm.getValueAt(rows - 1, cols[i]);
+
+      if(!isSeekable(values[i]))
+        return null;
+    }
+
+    return new DatatableKeysetCursor(start + rows, cols, desc, values);
+  }
+
+  /**
+   * Codifica il cursore in un token da restituire al client.
+   * @param signature firma di filtro e ordinamento correnti
+   * @return token
+   */
+  public String encode(String signature)
+  {
+    try
+    {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream(128);
+      DataOutputStream dos = new DataOutputStream(bos);
+      dos.writeInt(nextStart);
+      dos.writeInt(keyCols.length);
+      for(int i = 0; i < keyCols.length; i++)
+      {
+        dos.writeInt(keyCols[i]);
+        dos.writeBoolean(keyDesc[i]);
+        dos.writeBoolean(lastValues[i] instanceof String);
+        dos.writeUTF(lastValues[i] instanceof BigDecimal
+                        ? ((BigDecimal) lastValues[i]).toPlainString() : lastValues[i].toString());
+      }
+      dos.flush();
+
+      byte[] payload = bos.toByteArray();
+      Base64.Encoder enc = Base64.getUrlEncoder().withoutPadding();
+      return enc.encodeToString(payload) + "." + enc.encodeToString(sign(signature, payload));
+    }
+    catch(Exception ex)
+    {
+      log.debug("Cursore keyset non codificabile:", ex);
+      return null;
+    }
+  }
+
+  /**
+   * Decodifica un token ricevuto dal client.
+   * @param token token (può essere null)
+   * @param signature firma di filtro e ordinamento correnti
+   * @return cursore oppure null se il token è assente, alterato o di un'altra ricerca
+   */
+  public static DatatableKeysetCursor decode(String token, String signature)
+  {
+    if(!SU.isOkStr(token))
+      return null;
+
+    try
+    {
+      int pos = token.indexOf('.');
+      if(pos == -1)
+        return null;
+
+      Base64.Decoder dec = Base64.getUrlDecoder();
+      byte[] payload = dec.decode(token.substring(0, pos));
+      if(!MessageDigest.isEqual(sign(signature, payload), dec.decode(token.substring(pos + 1))))
+        return null;
+
+      DataInputStream dis = new DataInputStream(new ByteArrayInputStream(payload));
+      int nextStart = dis.readInt();
+      int n = dis.readInt();
+      int[] cols = new int[n];
+      boolean[] desc = new boolean[n];
+      Object[] values = new Object[n];
+      for(int i = 0; i < n; i++)
+      {
+        cols[i] = dis.readInt();
+        desc[i] = dis.readBoolean();
+        boolean isString = dis.readBoolean();
+        String value = dis.readUTF();
+        values[i] = isString ? value : new BigDecimal(value);
+      }
+
+      return new DatatableKeysetCursor(nextStart, cols, desc, values);
+    }
+    catch(Exception ex)
+    {
+      // token non valido: la pagina viene letta con OFFSET
+      return null;
+    }
+  }
+
+  private static byte[] sign(String signature, byte[] payload)
+     throws Exception
+  {
+    Mac mac = Mac.getInstance("HmacSHA256");
+    mac.init(new SecretKeySpec(hmacKey, "HmacSHA256"));
+    mac.update(signature.getBytes(StandardCharsets.UTF_8));
+    return mac.doFinal(payload);
+  }
+
+  /**
+   * Ritorna la condizione where per la pagina richiesta.
+   * @param stm table model della lista
+   * @param start prima riga richiesta
+   * @return condizione where oppure null se occorre usare OFFSET
+   */
+  public String getSeekWhere(SqlTableModel stm, int start)
+  {
+    if(start == 0 || start != nextStart)
+      return null;
+
+    boolean[] after = getNullsAfter();
+    if(after == null)
+      return null;
+
+    StringBuilder sb = new StringBuilder(128);
+    sb.append("(");
+    for(int i = 0; i < keyCols.length; i++)
+    {
+      if(i > 0)
+        sb.append(" OR ");
+
+      sb.append("(");
+      for(int j = 0; j < i; j++)
+      {
+        sb.append(stm.getColumn(keyCols[j]).getName())
+           .append(" = ").append(formatValue(lastValues[j])).append(" AND ");
+      }
+
+      String colName = stm.getColumn(keyCols[i]).getName();
+      String cmp = colName + (keyDesc[i] ? " < " : " > ") + formatValue(lastValues[i]);
+
+      // i NULL seguono l'ultimo valore letto solo se il database li ordina dopo i valori in questa direzione
+      if(after[keyDesc[i] ? 1 : 0])
+        sb.append("(").append(cmp).append(" OR ").append(colName).append(" IS NULL)");
+      else
+        sb.append(cmp);
+
+      sb.append(")");
+    }
+    sb.append(")");
+
+    return sb.toString();
+  }
+
+  /**
+   * Ordinamento dei NULL del database.
+   * Letto una sola volta dai metadati JDBC della connessione di default.
+   * @return {ascendente, discendente} vero se i NULL seguono i valori; null se non determinabile
+   */
+  protected static boolean[] getNullsAfter()
+  {
+    if(nullsAfter != null || !nullsKnown)
+      return nullsAfter;
+
+    synchronized(DatatableKeysetCursor.class)
+    {
+      if(nullsAfter != null || !nullsKnown)
+        return nullsAfter;
+
+      Connection con = null;
+      try
+      {
+        con = Transaction.begin();
+        DatabaseMetaData md = con.getMetaData();
+
+        if(md.nullsAreSortedAtEnd())
+          nullsAfter = new boolean[]{true, true};
+        else if(md.nullsAreSortedAtStart())
+          nullsAfter = new boolean[]{false, false};
+        else if(md.nullsAreSortedHigh())
+          nullsAfter = new boolean[]{true, false};
+        else if(md.nullsAreSortedLow())
+          nullsAfter = new boolean[]{false, true};
+        else
+          nullsKnown = false;
+      }
+      catch(Exception ex)
+      {
+        log.error("Ordinamento dei NULL non determinabile; paginazione keyset disattivata.", ex);
+        nullsKnown = false;
+      }
+      finally
+      {
+        if(con != null)
+          Transaction.safeRollback(con);
+      }
+
+      return nullsAfter;
+    }
+  }
+
+  protected static boolean isSeekable(Object value)
+  {
+    // i numeri in virgola mobile sono esclusi per i problemi di arrotondamento
+    return value instanceof Integer || value instanceof Long || value instanceof Short
+       || value instanceof BigInteger || value instanceof BigDecimal
+       || (value instanceof String && ((String) value).length() < 4096);
+  }
+
+  protected static String formatValue(Object value)
+  {
+    if(value instanceof BigDecimal)
+      return ((BigDecimal) value).toPlainString();
+    if(value instanceof Number)
+      return value.toString();
+
+    return "'" + value.toString().replace("'", "''") + "'";
+  }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2026 Nicola De Nisco
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.sirio5.rigel;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Accesso ai campi di controllo (id_user, stato_rec, ult_modif, ecc.) degli oggetti Peer.
+ * Per ogni classe di oggetti i metodi get/set vengono cercati una sola volta
+ * e convertiti in MethodHandle con firma generica; l'istanza è immutabile
+ * e condivisa fra tutti i thread.
+ * Un handle a null indica che l'oggetto non possiede il campo relativo.
+ * Gli accessori possono essere costruiti anche a partire da metodi risolti
+ * altrove (vedi CoreObjectSaver.getObjectMethod): in questo caso vengono
+ * condivisi solo se coincidono con quelli della ricerca standard.
+ *
+ * @author Nicola De Nisco
+ */
+public class PersistentAuditAccessors
+{
+  private static final Map<Class, PersistentAuditAccessors> cache = new ConcurrentHashMap<>();
+  private static final MethodType SET_INT = MethodType.methodType(void.class, Object.class, int.class);
+  private static final MethodType SET_OBJ = MethodType.methodType(void.class, Object.class, Object.class);
+  private static final MethodType GET_OBJ = MethodType.methodType(Object.class, Object.class);
+
+  public final Class objectClass;
+  public final MethodHandle setIdAzienda, setIdApplicativi, getIdUser, setIdUser, setIdUcrea,
+     getStatoRec, setStatoRec, getUltModif, setUltModif, setCreazione, getUuid, setUuid;
+  private final Method[] methods;
+
+  /**
+   * Costruttore.
+   * @param objectClass classe dell'oggetto peer
+   * @param methods metodi nell'ordine di resolve() (null se il campo non esiste)
+   */
+  private PersistentAuditAccessors(Class objectClass, Method[] methods)
+  {
+    this.objectClass = objectClass;
+    this.methods = methods;
+
+    setIdAzienda = toHandle(methods[0]);
+    setIdApplicativi = toHandle(methods[1]);
+    getIdUser = toHandle(methods[2]);
+    setIdUser = toHandle(methods[3]);
+    setIdUcrea = toHandle(methods[4]);
+    getStatoRec = toHandle(methods[5]);
+    setStatoRec = toHandle(methods[6]);
+    getUltModif = toHandle(methods[7]);
+    setUltModif = toHandle(methods[8]);
+    setCreazione = toHandle(methods[9]);
+    getUuid = toHandle(methods[10]);
+    setUuid = toHandle(methods[11]);
+  }
+
+  /**
+   * Ritorna gli accessori per la classe indicata.
+   * @param objectClass classe dell'oggetto peer
+   * @return accessori (condivisi)
+   */
+  public static PersistentAuditAccessors get(Class objectClass)
+  {
+    return cache.computeIfAbsent(objectClass, (c) -> new PersistentAuditAccessors(c, resolve(c)));
+  }
+
+  /**
+   * Ritorna gli accessori costruiti sui metodi indicati.
+   * Se i metodi coincidono con quelli della ricerca standard viene
+   * restituita l'istanza condivisa, altrimenti ne viene creata una nuova.
+   * @param objectClass classe dell'oggetto peer
+   * @param methods setIdAzienda, setIdapplicativi, getIdUser, setIdUser, setIdUcrea,
+   * getStatoRec, setStatoRec, getUltModif, setUltModif, setCreazione, getUuid, setUuid
+   * (null se il campo non esiste)
+   * @return accessori
+   */
+  public static PersistentAuditAccessors get(Class objectClass, Method... methods)
+  {
+    PersistentAuditAccessors pa = get(objectClass);
+    return pa.matches(methods) ? pa : new PersistentAuditAccessors(objectClass, methods.clone());
+  }
+
+  /**
+   * Verifica se gli accessori sono costruiti sui metodi indicati.
+   * @param methods metodi nello stesso ordine di get(Class, Method...)
+   * @return vero se coincidono
+   */
+  public boolean matches(Method... methods)
+  {
+    return Arrays.equals(this.methods, methods);
+  }
+
+  private static Method[] resolve(Class objectClass)
+  {
+    return new Method[]
+    {
+      findMethod(objectClass, "setIdAzienda", Integer.TYPE),
+      findMethod(objectClass, "setIdapplicativi", Integer.TYPE),
+      findMethod(objectClass, "getIdUser"),
+      findMethod(objectClass, "setIdUser", Integer.TYPE),
+      findMethod(objectClass, "setIdUcrea", Integer.TYPE),
+      findMethod(objectClass, "getStatoRec"),
+      findMethod(objectClass, "setStatoRec", Integer.TYPE),
+      findMethod(objectClass, "getUltModif"),
+      findMethod(objectClass, "setUltModif", Date.class),
+      findMethod(objectClass, "setCreazione", Date.class),
+      findMethod(objectClass, "getUuid"),
+      findMethod(objectClass, "setUuid", String.class)
+    };
+  }
+
+  private static Method findMethod(Class objectClass, String name, Class... parType)
+  {
+    try
+    {
+      return objectClass.getMethod(name, parType);
+    }
+    catch(Exception ex)
+    {
+      return null;
+    }
+  }
+
+  private static MethodHandle toHandle(Method m)
+  {
+    if(m == null)
+      return null;
+
+    try
+    {
+      Class[] parTypes = m.getParameterTypes();
+      MethodType genericType = parTypes.length == 0 ? GET_OBJ
+                                  : parTypes[0] == Integer.TYPE ? SET_INT : SET_OBJ;
+      return MethodHandles.publicLookup().unreflect(m).asType(genericType);
+    }
+    catch(Exception ex)
+    {
+      return null;
+    }
+  }
+
+  /**
+   * Imposta un campo intero.
+   * @param setter handle del setter
+   * @param obj oggetto
+   * @param value valore
+   * @throws Exception
+   */
+  public static void setInt(MethodHandle setter, Object obj, int value)
+     throws Exception
+  {
+    try
+    {
+      setter.invokeExact(obj, value);
+    }
+    catch(Throwable t)
+    {
+      throw asException(t);
+    }
+  }
+
+  /**
+   * Imposta un campo oggetto (anche null).
+   * @param setter handle del setter
+   * @param obj oggetto
+   * @param value valore
+   * @throws Exception
+   */
+  public static void setObject(MethodHandle setter, Object obj, Object value)
+     throws Exception
+  {
+    try
+    {
+      setter.invokeExact(obj, value);
+    }
+    catch(Throwable t)
+    {
+      throw asException(t);
+    }
+  }
+
+  /**
+   * Legge un campo.
+   * @param getter handle del getter
+   * @param obj oggetto
+   * @return valore del campo (i primitivi sono restituiti come wrapper)
+   * @throws Exception
+   */
+  public static Object getValue(MethodHandle getter, Object obj)
+     throws Exception
+  {
+    try
+    {
+      return (Object) getter.invokeExact(obj);
+    }
+    catch(Throwable t)
+    {
+      throw asException(t);
+    }
+  }
+
+  private static Exception asException(Throwable t)
+  {
+    if(t instanceof Error)
+      throw (Error) t;
+    if(t instanceof Exception)
+      return (Exception) t;
+    return new Exception(t);
+  }
+}
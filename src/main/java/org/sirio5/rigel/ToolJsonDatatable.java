@@ -17,7 +17,9 @@
  */
 package org.sirio5.rigel;
 
+import java.io.Writer;
 import org.json.JSONArray;
+import org.json.JSONObject;
 import org.rigel5.table.RigelColumnDescriptor;
 import org.rigel5.table.xml.jsonTable;
 import org.sirio5.utils.CoreRunData;
@@ -41,6 +43,50 @@ public class ToolJsonDatatable extends jsonTable
       out.put(doCellText(row, col));
   }
 
+  /**
+   * Scrive l'array delle righe direttamente sul writer.
+   * I descrittori delle colonne visibili vengono risolti una sola volta per pagina;
+   * ogni cella viene formattata e scritta senza passare da oggetti JSON intermedi.
+   * Le ridefinizioni di doRows(), doRow() o doCellText() nelle classi derivate
+   * non vengono considerate: per queste classi va usato doRows()
+   * (vedi ToolRenderDatatableRigel.renderJson).
+   * @param out writer di output
+   * @param numRows numero di righe del table model
+   * @throws Exception
+   */
+  public void writeRows(Writer out, int numRows)
+     throws Exception
+  {
+    int numCols = columnModel.getColumnCount();
+    RigelColumnDescriptor[] cds = new RigelColumnDescriptor[numCols];
+    for(int col = 0; col < numCols; col++)
+    {
+      RigelColumnDescriptor cd = getCD(col);
+      cds[col] = cd != null && cd.isVisible() ? cd : null;
+    }
+
+    out.write('[');
+    for(int row = 0; row < numRows; row++)
+    {
+      if(row > 0)
+        out.write(',');
+
+      out.write('[');
+      for(int col = 0; col < numCols; col++)
+      {
+        if(col > 0)
+          out.write(',');
+
+        if(cds[col] == null)
+          out.write("\"\"");
+        else
+          JSONObject.quote(doFormatCellValue(row, col, cds[col]), out);
+      }
+      out.write(']');
+    }
+    out.write(']');
+  }
+
   public String doCellText(int row, int col)
      throws Exception
   {
@@ -17,9 +17,9 @@
  */
 package org.sirio5.rigel;
 
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.BufferedWriter;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -30,7 +30,6 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.fulcrum.parser.ParameterParser;
 import org.apache.turbine.util.RunData;
 import org.apache.velocity.context.Context;
-import org.apache.velocity.util.ClassUtils;
 import org.commonlib5.utils.ArrayMap;
 import org.commonlib5.utils.ClassOper;
 import org.commonlib5.utils.Pair;
@@ -50,7 +49,7 @@ import org.sirio5.services.modellixml.MDL;
 import org.sirio5.utils.CoreRunData;
 import org.sirio5.utils.SU;
 import org.sirio5.utils.TR;
-import org.sirio5.utils.velocity.VelocityParser;
+import org.sirio5.utils.velocity.ResourceTemplateCache;
 
 /**
  * Renderizzatore per Tool Liste.
@@ -106,6 +105,64 @@ public class ToolRenderDatatableRigel
     return rv.toString();
   }
 
+  /**
+   * Produce JSON per il Tool delle liste scrivendolo direttamente sul writer.
+   * Stesso formato di renderJson(RunData) ma le righe vengono serializzate
+   * mentre si scorre il table model, senza costruire l'albero JSON in memoria.
+   * L'intestazione (draw, totali, cursore) viene preparata prima di scrivere
+   * qualunque cosa: un errore nella preparazione della pagina non produce output;
+   * un errore durante la scrittura delle righe viene propagato al chiamante.
+   * Le tabelle derivate (vedi getTableCustom) seguono il percorso di renderJson(RunData)
+   * per rispettare eventuali ridefinizioni di doRows(), doRow() o doCellText().
+   * @param data dati di chiamata
+   * @param out writer di output (tipicamente quello della response)
+   * @throws Exception
+   */
+  public void renderJson(RunData data, Writer out)
+     throws Exception
+  {
+    String ctxUnique = data.getParameters().getString("unique");
+    Context ctx = (Context) data.getSession().getAttribute(ctxUnique);
+    if(ctx == null)
+      throw new Exception(INT.I("Context non presente in sessione; tool non disponibile."));
+
+    Pair<ToolJsonDatatable, String> prep = prepareCoreJson((CoreRunData) data, ctx);
+    ToolJsonDatatable table = prep.first;
+    AtomicInteger counter = (AtomicInteger) ctx.get("counter");
+
+    if(table.getClass() != ToolJsonDatatable.class)
+    {
+      JSONObject rv = new JSONObject();
+      rv.put("draw", counter.getAndIncrement());
+      rv.put("recordsTotal", ctx.get("recordsTotal"));
+      rv.put("recordsFiltered", ctx.get("recordsFiltered"));
+      if(prep.second != null)
+        rv.put("keysetCursor", prep.second);
+      table.doRows(rv);
+      rv.write(out);
+      return;
+    }
+
+    int numRows = ((SqlWrapperListaXml) ctx.get("wrapper")).getPtm().getRowCount();
+    StringBuilder prefix = new StringBuilder(128);
+
+    prefix.append("{\"draw\":").append(counter.getAndIncrement());
+    prefix.append(",\"recordsTotal\":").append(ctx.get("recordsTotal"));
+    prefix.append(",\"recordsFiltered\":").append(ctx.get("recordsFiltered"));
+    if(prep.second != null)
+    {
+      // token base64url: non richiede escape JSON
+      prefix.append(",\"keysetCursor\":\"").append(prep.second).append('"');
+    }
+    prefix.append(",\"data\":");
+
+    BufferedWriter bw = new BufferedWriter(out, 8192);
+    bw.write(prefix.toString());
+    table.writeRows(bw, numRows);
+    bw.write('}');
+    bw.flush();
+  }
+
   /**
    * Produce HTML per il Tool delle liste.
    * @param data dati di chiamata
@@ -113,7 +170,7 @@ public class ToolRenderDatatableRigel
    * @return HTML della lista
    * @throws Exception
    */
-  public synchronized String renderHtml(RunData data, Context ctx)
+  public String renderHtml(RunData data, Context ctx)
      throws Exception
   {
     int counter = (int) ctx.get("count");
@@ -143,14 +200,8 @@ public class ToolRenderDatatableRigel
     data.getSession().setAttribute(unique, ctx);
 
     StringWriter writer = new StringWriter(512);
-    // renderizzazione Velocity con il modello caricato da risorsa
-    try (InputStream is = ClassUtils.getResourceAsStream(getClass(), "/ToolDatatable.vm"))
-    {
-      InputStreamReader reader = new InputStreamReader(is, "UTF-8");
-
-      VelocityParser vp = new VelocityParser(ctx);
-      vp.parseReader(reader, writer, "ToolDatatable.vm");
-    }
+    // renderizzazione Velocity con il modello caricato da risorsa (compilato una sola volta)
+    ResourceTemplateCache.merge(getClass(), "/ToolDatatable.vm", ctx, writer);
 
     return writer.toString();
   }
@@ -220,12 +271,38 @@ public class ToolRenderDatatableRigel
 
   private JSONObject renderCoreJson(CoreRunData data, Context ctx)
      throws Exception
+  {
+    Pair<ToolJsonDatatable, String> prep = prepareCoreJson(data, ctx);
+
+    AtomicInteger counter = (AtomicInteger) ctx.get("counter");
+    JSONObject out = new JSONObject();
+    out.put("draw", counter.getAndIncrement());
+    out.put("recordsTotal", ctx.get("recordsTotal"));
+    out.put("recordsFiltered", ctx.get("recordsFiltered"));
+    if(prep.second != null)
+      out.put("keysetCursor", prep.second);
+    prep.first.doRows(out);
+
+    return out;
+  }
+
+  /**
+   * Esegue la query della pagina richiesta e prepara la tabella per l'output.
+   * @param data dati di chiamata
+   * @param ctx context del tool
+   * @return tabella pronta per la produzione delle righe e token del cursore keyset
+   * da restituire al client (null se la pagina successiva userà OFFSET)
+   * @throws Exception
+   */
+  private Pair<ToolJsonDatatable, String> prepareCoreJson(CoreRunData data, Context ctx)
+     throws Exception
   {
     RigelI18nInterface i18n = new RigelHtmlI18n(data);
     ParameterParser pp = data.getParameters();
     int rStart = pp.getInt("start");
     int rLimit = data.getParameters().getInt("length");
     String search = data.getParameters().getString("search[value]");
+    String keysetToken = data.getParameters().getString("keysetCursor");
 
     // recupera parametri del tool e li passa in RunData
     Map<String, String> mp = (Map<String, String>) ctx.get("paramsMap");
@@ -264,25 +341,66 @@ public class ToolRenderDatatableRigel
       }
     }
 
+    // la chiave primaria completa l'ordinamento per la paginazione keyset
+    boolean keyset = SU.checkTrueFalse(mp == null ? null : mp.get("keyset"), TR.getBoolean("rigel.datatable.keyset", false))
+       && DatatableKeysetCursor.addPrimaryKeyOrder(stm, mapOrder);
+
     Pair<FiltroListe, FiltroListe> cSelezione = (Pair<FiltroListe, FiltroListe>) ctx.get("cSelezione");
     if(cSelezione == null || !checkFiltroValido(stm, cSelezione.first, search, mapOrder, freeFilter))
     {
       cSelezione = creaFiltro(stm, i18n, search, mapOrder, freeFilter);
       ctx.put("cSelezione", cSelezione);
-      ctx.put("recordsTotal", stm.getTotalRecords(cSelezione.second));
-      ctx.put("recordsFiltered", stm.getTotalRecords(cSelezione.first));
+
+      // i conteggi non dipendono dall'ordinamento: vengono riutilizzati fra le richieste
+      FiltroListe flTotal = cSelezione.second, flFiltered = cSelezione.first;
+      String vista = stm.getQuery().getVista();
+      Object user = TR.getBoolean("rigel.datatable.count.shareUsers", false) ? "*" : data.getUserID();
+      String keyTotal = DatatableCountCache.buildKey(wxml.getNome(), vista, mp, freeFilter, user);
+      String keyFiltered = DatatableCountCache.buildKey(keyTotal, search);
+
+      ctx.put("recordsTotal", DatatableCountCache.getCount(keyTotal, vista, () -> (long) stm.getTotalRecords(flTotal)));
+      ctx.put("recordsFiltered", SU.isOkStr(search)
+         ? DatatableCountCache.getCount(keyFiltered, vista, () -> (long) stm.getTotalRecords(flFiltered))
+         : ctx.get("recordsTotal"));
     }
 
-    stm.getQuery().setOffset(rStart);
+    // il cursore keyset viaggia con la richiesta: token restituito con la pagina precedente
+    String signature = keyset ? DatatableKeysetCursor.buildSignature(wxml.getNome(), search, freeFilter, mapOrder, rLimit) : null;
+    DatatableKeysetCursor cursor = keyset ? DatatableKeysetCursor.decode(keysetToken, signature) : null;
+    String seekWhere = cursor == null ? null : cursor.getSeekWhere(stm, rStart);
+
+    FiltroData fd = (FiltroData) cSelezione.first.getOggFiltro();
+    stm.getQuery().setFiltro(fd);
     stm.getQuery().setLimit(rLimit);
-    stm.getQuery().setFiltro((FiltroData) (cSelezione.first.getOggFiltro()));
-    stm.rebind();
 
-    AtomicInteger counter = (AtomicInteger) ctx.get("counter");
-    JSONObject out = new JSONObject();
-    out.put("draw", counter.getAndIncrement());
-    out.put("recordsTotal", ctx.get("recordsTotal"));
-    out.put("recordsFiltered", ctx.get("recordsFiltered"));
+    if(seekWhere != null)
+    {
+      // pagina successiva in navigazione sequenziale: seek sui valori dell'ultima riga;
+      // la condizione viene aggiunta al filtro corrente solo per la durata della query
+      fd.addFreeWhere(seekWhere);
+      try
+      {
+        stm.getQuery().setOffset(0);
+        stm.rebind();
+      }
+      finally
+      {
+        fd.vFreeWhere.remove(fd.vFreeWhere.size() - 1);
+      }
+    }
+    else
+    {
+      stm.getQuery().setOffset(rStart);
+      stm.rebind();
+    }
+
+    String nextToken = null;
+    if(keyset)
+    {
+      DatatableKeysetCursor next = DatatableKeysetCursor.fromPage(stm, mapOrder, rStart);
+      if(next != null)
+        nextToken = next.encode(signature);
+    }
 
     ToolJsonDatatable table = (ToolJsonDatatable) ctx.get("ToolJsonDatatable");
     if(table == null)
@@ -296,9 +414,8 @@ public class ToolRenderDatatableRigel
     table.setRunData(data);
     table.setModel(stm);
     table.setColumnModel(stm.getColumnModel());
-    table.doRows(out);
 
-    return out;
+    return new Pair<>(table, nextToken);
   }
 
   /**
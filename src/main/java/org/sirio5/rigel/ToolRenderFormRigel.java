@@ -17,13 +17,10 @@
  */
 package org.sirio5.rigel;
 
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.StringWriter;
 import java.util.Map;
 import org.apache.turbine.util.RunData;
 import org.apache.velocity.context.Context;
-import org.apache.velocity.util.ClassUtils;
 import org.rigel5.SetupHolder;
 import org.rigel5.table.RigelTableModel;
 import org.rigel5.table.html.wrapper.HtmlWrapperBase;
@@ -33,7 +30,7 @@ import org.sirio5.modules.screens.rigel.FormBase;
 import org.sirio5.services.localization.INT;
 import org.sirio5.utils.CoreRunData;
 import org.sirio5.utils.SU;
-import org.sirio5.utils.velocity.VelocityParser;
+import org.sirio5.utils.velocity.ResourceTemplateCache;
 
 /**
  * Renderizzatore specializzato.
@@ -210,14 +207,8 @@ public class ToolRenderFormRigel extends FormBase
       return suppressEmptyMessage;
 
     StringWriter writer = new StringWriter(512);
-    // renderizzazione Velocity con il modello caricato da risorsa
-    try (InputStream is = ClassUtils.getResourceAsStream(getClass(), "/" + modello))
-    {
-      InputStreamReader reader = new InputStreamReader(is, "UTF-8");
-
-      VelocityParser vp = new VelocityParser(ctx);
-      vp.parseReader(reader, writer, modello);
-    }
+    // renderizzazione Velocity con il modello caricato da risorsa (compilato una sola volta)
+    ResourceTemplateCache.merge(getClass(), "/" + modello, ctx, writer);
 
     // rimaneggia javascript sostituendo submit con funzione specifica
     return SU.strReplace(writer.toString(), "document." + formName + ".submit();", funcNameSubmit + "();");
@@ -17,14 +17,11 @@
  */
 package org.sirio5.rigel;
 
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.StringWriter;
 import java.util.Map;
 import org.apache.fulcrum.parser.ParameterParser;
 import org.apache.turbine.util.RunData;
 import org.apache.velocity.context.Context;
-import org.apache.velocity.util.ClassUtils;
 import org.rigel5.SetupHolder;
 import org.rigel5.glue.table.AlternateColorTableAppBase;
 import org.rigel5.table.html.AbstractHtmlTablePagerFilter;
@@ -41,7 +38,7 @@ import org.sirio5.modules.screens.rigel.ListaInfo;
 import org.sirio5.services.localization.INT;
 import org.sirio5.utils.CoreRunData;
 import org.sirio5.utils.SU;
-import org.sirio5.utils.velocity.VelocityParser;
+import org.sirio5.utils.velocity.ResourceTemplateCache;
 
 /**
  * Renderizzatore per Tool Liste.
@@ -213,14 +210,8 @@ public class ToolRenderListeRigel extends ListaBase5
       return suppressEmptyMessage;
 
     StringWriter writer = new StringWriter(512);
-    // renderizzazione Velocity con il modello caricato da risorsa
-    try(InputStream is = ClassUtils.getResourceAsStream(getClass(), "/ToolLista.vm"))
-    {
-      InputStreamReader reader = new InputStreamReader(is, "UTF-8");
-
-      VelocityParser vp = new VelocityParser(ctx);
-      vp.parseReader(reader, writer, "ToolLista.vm");
-    }
+    // renderizzazione Velocity con il modello caricato da risorsa (compilato una sola volta)
+    ResourceTemplateCache.merge(getClass(), "/ToolLista.vm", ctx, writer);
 
     String html = writer.toString();
 
@@ -120,8 +120,8 @@ public class CoreTlsManager
     File fKeyStore = new File(dirCatalinaConf, keyStore);
     File fTrustStore = new File(dirCatalinaConf, trustStore);
 
-    log.debug(INT.I("Uso %s come file keyStore.", fKeyStore.getCanonicalPath()));
-    log.debug(INT.I("Uso %s come file trustStore.", fTrustStore.getCanonicalPath()));
+    log.debug(INT.L("Uso %s come file keyStore.", fKeyStore.getCanonicalPath()));
+    log.debug(INT.L("Uso %s come file trustStore.", fTrustStore.getCanonicalPath()));
 
     info.setKeyStore(fKeyStore);
     info.setKeyStoreType(keyStoreType);
@@ -166,7 +166,7 @@ public class CoreTlsManager
       }
     }
 
-    log.debug(INT.I("Layer SSL/TLS inizializzato."));
+    log.debug(INT.L("Layer SSL/TLS inizializzato."));
   }
 
   public SSLSocketInfo getInfo()
@@ -241,7 +241,7 @@ public class CoreTlsManager
     try
     {
       boolean valid = true;
-      log.debug(INT.I("Inizio verifica certificati per %s:%d", host, port));
+      log.debug(INT.L("Inizio verifica certificati per %s:%d", host, port));
       X509Certificate[] cert = sslsocket.getSession().getPeerCertificateChain();
 
       for(int i = 0; i < cert.length; i++)
@@ -253,16 +253,16 @@ public class CoreTlsManager
         }
         catch(CertificateExpiredException e1)
         {
-          log.debug(INT.I("Certificato scaduto: %s", e1.getMessage()));
+          log.debug(INT.L("Certificato scaduto: %s", e1.getMessage()));
           valid = false;
         }
         catch(CertificateNotYetValidException e2)
         {
-          log.debug(INT.I("Certificato non valido: %s", e2.getMessage()));
+          log.debug(INT.L("Certificato non valido: %s", e2.getMessage()));
           valid = false;
         }
       }
-      log.debug(INT.I("Fine verifica certificati per %s:%d", host, port));
+      log.debug(INT.L("Fine verifica certificati per %s:%d", host, port));
 
       if(!valid)
         throw new CoreServiceException(
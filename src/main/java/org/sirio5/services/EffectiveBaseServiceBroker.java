@@ -19,13 +19,22 @@ package org.sirio5.services;
  * under the License.
  */
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
@@ -68,6 +77,11 @@ public abstract class EffectiveBaseServiceBroker implements ServiceBroker
    */
   protected final Hashtable<String, Service> services = new Hashtable<String, Service>();
 
+  /**
+   * Services already initialized: looked up without locking.
+   */
+  protected final Map<String, Service> readyServices = new ConcurrentHashMap<String, Service>();
+
   /**
    * Configuration for the services broker.
    * The configuration should be set by the application
@@ -87,6 +101,19 @@ public abstract class EffectiveBaseServiceBroker implements ServiceBroker
    */
   public static final String CLASSNAME_SUFFIX = ".classname";
 
+  /**
+   * A <code>Service</code> property listing the services that must be
+   * initialized before it (comma separated).
+   */
+  public static final String DEPENDS_ON = "dependsOn";
+
+  /**
+   * Number of threads used for early initialization of services.
+   * With a value of 1 (default) services are initialized serially
+   * in declaration order.
+   */
+  public static final String STARTUP_THREADS_KEY = "services.startupThreads";
+
   /**
    * These are objects that the parent application
    * can provide so that application specific
@@ -349,6 +376,9 @@ public abstract class EffectiveBaseServiceBroker implements ServiceBroker
   /**
    * Performs early initialization of specified service.
    *
+   * The lock is taken on the service instance, so independent services
+   * can be initialized concurrently by different threads.
+   *
    * @param name The name of the service (generally the
    * <code>SERVICE_NAME</code> constant of the service's interface
    * definition).
@@ -356,7 +386,7 @@ public abstract class EffectiveBaseServiceBroker implements ServiceBroker
    * service was not successful.
    */
   @Override
-  public synchronized void initService(String name)
+  public void initService(String name)
      throws InitializationException
   {
     // Calling getServiceInstance(name) assures that the Service
@@ -364,10 +394,18 @@ public abstract class EffectiveBaseServiceBroker implements ServiceBroker
     // initialization.
     Service instance = getServiceInstance(name);
 
-    if(!instance.getInit())
+    synchronized(instance)
     {
-      // this call might result in an indirect recursion
-      instance.init();
+      if(!instance.getInit())
+      {
+        // this call might result in an indirect recursion
+        instance.init();
+      }
+    }
+
+    if(instance.getInit())
+    {
+      readyServices.put(name, instance);
     }
   }
 
@@ -395,6 +433,11 @@ public abstract class EffectiveBaseServiceBroker implements ServiceBroker
    * after one service fails, the other will not have the chance
    * to initialize.
    *
+   * When <code>services.startupThreads</code> is greater than 1 the
+   * services are initialized in parallel, following the dependencies
+   * declared with <code>services.MyService.dependsOn</code>.
+   * In both cases the startup critical path is logged at the end.
+   *
    * @param report <code>true</code> if you want exceptions thrown.
    * @throws RuntimeException if the service could not be instantiated
    * @throws InitializationException if the service could not be initialized
@@ -402,30 +445,283 @@ public abstract class EffectiveBaseServiceBroker implements ServiceBroker
   public void initServices(boolean report)
      throws InitializationException
   {
-    if(report)
+    List<String> names = new ArrayList<String>();
+    for(Iterator<String> itr = getServiceNames(); itr.hasNext();)
     {
-      // Throw exceptions
-      for(Iterator<String> names = getServiceNames(); names.hasNext();)
+      String name = itr.next();
+      if(getConfiguration(name).getBoolean("earlyInit", false))
       {
-        doInitService(names.next());
+        names.add(name);
       }
     }
+
+    Map<String, List<String>> dependencies = getDependencies(names);
+    Map<String, long[]> timings = new ConcurrentHashMap<String, long[]>();
+    int threads = configuration.getInt(STARTUP_THREADS_KEY, 1);
+    long start = System.currentTimeMillis();
+
+    if(threads <= 1 || names.size() <= 1)
+    {
+      initServicesSerial(names, timings, report);
+    }
     else
     {
-      // Eat exceptions
-      for(Iterator<String> names = getServiceNames(); names.hasNext();)
+      initServicesParallel(names, dependencies, timings, threads, report);
+    }
+
+    logCriticalPath(names, dependencies, timings, System.currentTimeMillis() - start);
+    log.info("Finished initializing all services!");
+  }
+
+  /**
+   * Serial early initialization in declaration order.
+   */
+  protected void initServicesSerial(List<String> names, Map<String, long[]> timings, boolean report)
+     throws InitializationException
+  {
+    for(String name : names)
+    {
+      try
+      {
+        doInitService(name, timings);
+      }
+      catch(InitializationException e)
+      {
+        if(report)
+        {
+          throw e;
+        }
+
+        log.error(e);
+      }
+    }
+  }
+
+  /**
+   * Parallel early initialization: each service is started as soon as
+   * all its declared dependencies have been initialized.
+   * When a dependency fails the service is still attempted if report is false
+   * (as in serial mode); otherwise it is skipped.
+   * Services involved in a dependency cycle are initialized serially
+   * at the end.
+   */
+  protected void initServicesParallel(List<String> names, Map<String, List<String>> dependencies,
+     Map<String, long[]> timings, int threads, boolean report)
+     throws InitializationException
+  {
+    AtomicInteger count = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(threads, (r) ->
+    {
+      Thread t = new Thread(r, "service-init-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+
+    Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<String, CompletableFuture<Void>>();
+    List<String> cyclic = new ArrayList<String>();
+
+    try
+    {
+      for(String name : sortByDependencies(names, dependencies, cyclic))
+      {
+        List<String> deps = dependencies.get(name);
+        CompletableFuture<?>[] depFutures = new CompletableFuture<?>[deps.size()];
+        for(int i = 0; i < depFutures.length; i++)
+        {
+          depFutures[i] = futures.get(deps.get(i));
+        }
+
+        // handle: the service waits for all its dependencies, failed ones included;
+        // each dependency failure is logged once, under the name of the dependency
+        futures.put(name, CompletableFuture.allOf(depFutures).handleAsync((v, depFailure) ->
+        {
+          if(depFailure != null && report)
+          {
+            // same as serial mode: with report the services after a failure are not attempted
+            throw new CompletionException(new InitializationException(
+               "Service " + name + " not initialized: a dependency failed"));
+          }
+
+          try
+          {
+            doInitService(name, timings);
+            return null;
+          }
+          catch(InitializationException e)
+          {
+            throw new CompletionException(e);
+          }
+        }, executor));
+      }
+
+      InitializationException first = null;
+      for(Map.Entry<String, CompletableFuture<Void>> entry : futures.entrySet())
       {
         try
         {
-          doInitService(names.next());
+          entry.getValue().join();
         }
-        catch(InitializationException e)
+        catch(CompletionException e)
         {
-          log.error(e);
+          Throwable cause = e.getCause() == null ? e : e.getCause();
+          InitializationException ie = cause instanceof InitializationException
+                                          ? (InitializationException) cause
+                                          : new InitializationException(
+                                             "Failed to initialize service " + entry.getKey(), cause);
+
+          if(report && first == null)
+          {
+            first = ie;
+          }
+
+          log.error("Early initialization of service " + entry.getKey() + " failed", ie);
         }
       }
+
+      if(first != null)
+      {
+        throw first;
+      }
     }
-    log.info("Finished initializing all services!");
+    finally
+    {
+      executor.shutdown();
+    }
+
+    if(!cyclic.isEmpty())
+    {
+      log.warn("Dependency cycle among services " + cyclic + ": initialized serially.");
+      initServicesSerial(cyclic, timings, report);
+    }
+  }
+
+  /**
+   * Returns the declared dependencies of the services to initialize.
+   * Only dependencies among the given services are retained: other local
+   * services are initialized lazily by getService() when requested.
+   *
+   * @param names services to initialize
+   * @return map service name to list of dependencies
+   */
+  protected Map<String, List<String>> getDependencies(List<String> names)
+  {
+    Set<String> known = new LinkedHashSet<String>(names);
+    Map<String, List<String>> rv = new HashMap<String, List<String>>();
+
+    for(String name : names)
+    {
+      List<String> deps = new ArrayList<String>();
+      String[] declared = StringUtils.split(getConfiguration(name).getString(DEPENDS_ON, ""), ", ");
+      if(declared != null)
+      {
+        for(String dep : declared)
+        {
+          if(known.contains(dep) && !dep.equals(name) && !deps.contains(dep))
+          {
+            deps.add(dep);
+          }
+          else if(!known.contains(dep))
+          {
+            log.debug("Service " + name + " depends on " + dep + " which is not early initialized.");
+          }
+        }
+      }
+
+      rv.put(name, deps);
+    }
+
+    return rv;
+  }
+
+  /**
+   * Topological sort of the services keeping the declaration order
+   * among independent services.
+   *
+   * @param names services to sort
+   * @param dependencies declared dependencies
+   * @param cyclic receives the services involved in a cycle
+   * @return services in dependency order (without the cyclic ones)
+   */
+  protected List<String> sortByDependencies(List<String> names,
+     Map<String, List<String>> dependencies, List<String> cyclic)
+  {
+    List<String> sorted = new ArrayList<String>();
+    Set<String> done = new LinkedHashSet<String>();
+    List<String> pending = new ArrayList<String>(names);
+
+    boolean progress = true;
+    while(!pending.isEmpty() && progress)
+    {
+      progress = false;
+      for(Iterator<String> itr = pending.iterator(); itr.hasNext();)
+      {
+        String name = itr.next();
+        if(done.containsAll(dependencies.get(name)))
+        {
+          sorted.add(name);
+          done.add(name);
+          itr.remove();
+          progress = true;
+        }
+      }
+    }
+
+    cyclic.addAll(pending);
+    return sorted;
+  }
+
+  /**
+   * Logs the startup critical path: the chain of declared dependencies
+   * with the greatest total initialization time.
+   */
+  protected void logCriticalPath(List<String> names, Map<String, List<String>> dependencies,
+     Map<String, long[]> timings, long elapsed)
+  {
+    Map<String, Long> cost = new HashMap<String, Long>();
+    Map<String, String> previous = new HashMap<String, String>();
+    long total = 0;
+    String last = null;
+
+    for(String name : sortByDependencies(names, dependencies, new ArrayList<String>()))
+    {
+      long[] t = timings.get(name);
+      long duration = t == null ? 0 : t[1] - t[0];
+      long depCost = 0;
+
+      for(String dep : dependencies.get(name))
+      {
+        Long c = cost.get(dep);
+        if(c != null && c > depCost)
+        {
+          depCost = c;
+          previous.put(name, dep);
+        }
+      }
+
+      cost.put(name, depCost + duration);
+      total += duration;
+
+      if(last == null || cost.get(name) > cost.get(last))
+      {
+        last = name;
+      }
+    }
+
+    if(last == null)
+    {
+      return;
+    }
+
+    List<String> path = new ArrayList<String>();
+    for(String name = last; name != null; name = previous.get(name))
+    {
+      long[] t = timings.get(name);
+      path.add(name + "(" + (t == null ? 0 : t[1] - t[0]) + " ms)");
+    }
+    Collections.reverse(path);
+
+    log.info("Services initialized in " + elapsed + " ms (sum of init times " + total
+       + " ms); critical path " + cost.get(last) + " ms: " + StringUtils.join(path, " -> "));
   }
 
   /**
@@ -444,6 +740,26 @@ public abstract class EffectiveBaseServiceBroker implements ServiceBroker
     }
   }
 
+  /**
+   * Early initialization of a service recording start and end times.
+   */
+  protected void doInitService(String name, Map<String, long[]> timings)
+     throws InitializationException
+  {
+    long start = System.currentTimeMillis();
+    try
+    {
+      doInitService(name);
+    }
+    finally
+    {
+      timings.put(name, new long[]
+      {
+        start, System.currentTimeMillis()
+      });
+    }
+  }
+
   /**
    * Shuts down a <code>Service</code>, releasing resources
    * allocated by an <code>Service</code>, and returns it to its
@@ -457,6 +773,7 @@ public abstract class EffectiveBaseServiceBroker implements ServiceBroker
   {
     try
     {
+      readyServices.remove(name);
       Service service = getServiceInstance(name);
       if(service != null && service.getInit())
       {
@@ -523,7 +840,12 @@ public abstract class EffectiveBaseServiceBroker implements ServiceBroker
   public Object getService(String name)
      throws RuntimeException
   {
-    Service service;
+    // fast path: service already initialized, no locks
+    Service service = readyServices.get(name);
+    if(service != null && service.getInit())
+    {
+      return service;
+    }
 
     if(this.isLocalService(name))
     {
@@ -532,7 +854,7 @@ public abstract class EffectiveBaseServiceBroker implements ServiceBroker
         service = getServiceInstance(name);
         if(!service.getInit())
         {
-          synchronized(service.getClass())
+          synchronized(service)
           {
             if(!service.getInit())
             {
@@ -551,6 +873,7 @@ public abstract class EffectiveBaseServiceBroker implements ServiceBroker
           throw new InitializationException(
              "init() failed to initialize service " + name);
         }
+        readyServices.put(name, service);
         return service;
       }
       catch(InitializationException e)
@@ -595,55 +918,66 @@ public abstract class EffectiveBaseServiceBroker implements ServiceBroker
 
     if(service == null)
     {
-      if(!this.isLocalService(name))
+      // services may be requested concurrently during parallel startup:
+      // only one instance must be created
+      synchronized(services)
       {
-        throw new RuntimeException(
-           "ServiceBroker: unknown service " + name
-           + " requested");
-      }
+        service = services.get(name);
+        if(service != null)
+        {
+          return service;
+        }
 
-      try
-      {
-        Class<?> clazz = mapping.get(name);
+        if(!this.isLocalService(name))
+        {
+          throw new RuntimeException(
+             "ServiceBroker: unknown service " + name
+             + " requested");
+        }
 
         try
         {
-          service = (Service) clazz.newInstance();
+          Class<?> clazz = mapping.get(name);
 
-          // check if the newly created service is also a
-          // service provider - if so then remember it
-          if(service instanceof TurbineServiceProvider)
+          try
           {
-            this.serviceProviderInstanceMap.put(name, service);
+            service = (Service) clazz.newInstance();
+
+            // check if the newly created service is also a
+            // service provider - if so then remember it
+            if(service instanceof TurbineServiceProvider)
+            {
+              this.serviceProviderInstanceMap.put(name, service);
+            }
+          }
+          // those two errors must be passed to the VM
+          catch(ClassCastException e)
+          {
+            throw new RuntimeException("Class " + clazz
+               + " doesn't implement the Service interface", e);
+          }
+          catch(ThreadDeath t)
+          {
+            throw t;
+          }
+          catch(OutOfMemoryError t)
+          {
+            throw t;
+          }
+          catch(Throwable t)
+          {
+            throw new RuntimeException("Failed to instantiate " + clazz, t);
           }
         }
-        // those two errors must be passed to the VM
-        catch(ClassCastException e)
-        {
-          throw new RuntimeException("Class " + clazz
-             + " doesn't implement the Service interface", e);
-        }
-        catch(ThreadDeath t)
-        {
-          throw t;
-        }
-        catch(OutOfMemoryError t)
-        {
-          throw t;
-        }
-        catch(Throwable t)
+        catch(RuntimeException e)
         {
-          throw new RuntimeException("Failed to instantiate " + clazz, t);
+          throw new RuntimeException(
+             "Failed to instantiate service " + name, e);
         }
+        service.setServiceBroker(this);
+        service.setName(name);
+        services.put(name, service);
       }
-      catch(RuntimeException e)
-      {
-        throw new RuntimeException(
-           "Failed to instantiate service " + name, e);
-      }
-      service.setServiceBroker(this);
-      service.setName(name);
-      services.put(name, service);
     }
 
     return service;
@@ -34,10 +34,16 @@ abstract public class AbstractCoreAllarmiService extends BaseService
   private static Log log = LogFactory.getLog(AbstractCoreAllarmiService.class);
   // parametri
   protected int maxDaysAllarmi, maxDaysComm;
+  protected int purgeChunkSize = 5000;
+  protected long purgeIntervalMillis = 10 * 60 * 1000; // 10 minuti
   //
-  protected int numActive = 0;
-  protected long lastUpdNum = 0;
+  protected volatile int numActive = 0;
+  protected long lastUpdNum = 0, lastPurge = 0;
   protected static final long DELAY_UPD_NUM = 30 * 1000; // 30 secondi
+  //
+  protected Thread tMaint = null;
+  protected final Object semaforo = new Object();
+  protected volatile boolean richiestaConteggio = false;
 
   @Override
   public void init()
@@ -46,6 +52,8 @@ abstract public class AbstractCoreAllarmiService extends BaseService
 
     maxDaysAllarmi = cfg.getInt("maxDaysAllarmi", 60);
     maxDaysComm = cfg.getInt("maxDaysComm", 60);
+    purgeChunkSize = cfg.getInt("purgeChunkSize", purgeChunkSize);
+    purgeIntervalMillis = cfg.getInt("purgeIntervalMinutes", 10) * 60 * 1000L;
 
     // servizio inizializzato correttamente
     setInit(true);
@@ -54,6 +62,8 @@ abstract public class AbstractCoreAllarmiService extends BaseService
   @Override
   public void shutdown()
   {
+    if(tMaint != null)
+      tMaint.interrupt();
   }
 
   @Override
@@ -68,26 +78,148 @@ abstract public class AbstractCoreAllarmiService extends BaseService
     allarmLog(severity, servizio, componente, messaggio, visibilita);
   }
 
+  /**
+   * Ritorna numero allarmi attivi.
+   * Il valore viene aggiornato in background ogni 30 secondi
+   * dal thread di manutenzione (avviato alla prima richiesta);
+   * la richiesta non esegue mai accessi al db.
+   * @return allarmi attivi
+   * @throws Exception
+   */
   @Override
   public int getActiveAllarms()
      throws Exception
   {
-    if((System.currentTimeMillis() - lastUpdNum) > DELAY_UPD_NUM)
+    if(tMaint == null)
+      startMaintenance();
+
+    return numActive;
+  }
+
+  protected synchronized void startMaintenance()
+  {
+    if(tMaint != null)
+      return;
+
+    tMaint = new Thread(() -> runMaintenance());
+    tMaint.setName("allarmi-maint");
+    tMaint.setDaemon(true);
+    tMaint.start();
+  }
+
+  /**
+   * Richiede un nuovo conteggio degli allarmi al thread di manutenzione.
+   * @throws Exception
+   */
+  protected void resetActiveAllarms()
+     throws Exception
+  {
+    synchronized(semaforo)
     {
-      deleteAllarmi();
-      deleteCommlog();
+      richiestaConteggio = true;
+      semaforo.notifyAll();
+    }
+  }
 
-      numActive = contaAllarmi();
-      lastUpdNum = System.currentTimeMillis();
+  /**
+   * Funzione del thread di manutenzione.
+   * Pubblica il numero di allarmi attivi e cancella periodicamente
+   * allarmi e commlog scaduti (a blocchi).
+   */
+  protected void runMaintenance()
+  {
+    while(true)
+    {
+      try
+      {
+        // il conteggio viene pubblicato prima della cancellazione: al primo giro
+        // non attende la purge (potenzialmente lunga) degli scaduti
+        richiestaConteggio = false;
+        numActive = contaAllarmi();
+        lastUpdNum = System.currentTimeMillis();
+
+        if((lastUpdNum - lastPurge) > purgeIntervalMillis)
+        {
+          purge();
+          lastPurge = System.currentTimeMillis();
+        }
+
+        synchronized(semaforo)
+        {
+          if(!richiestaConteggio)
+            semaforo.wait(DELAY_UPD_NUM);
+        }
+      }
+      catch(InterruptedException ex)
+      {
+        break;
+      }
+      catch(Throwable t)
+      {
+        log.error("Errore manutenzione allarmi:", t);
+
+        try
+        {
+          Thread.sleep(DELAY_UPD_NUM);
+        }
+        catch(InterruptedException ex)
+        {
+          break;
+        }
+      }
     }
+  }
 
-    return numActive;
+  /**
+   * Cancellazione di allarmi e commlog scaduti.
+   * Ogni blocco viene cancellato in una transazione separata
+   * per limitare i tempi di blocco delle tabelle.
+   * @throws Exception
+   */
+  protected void purge()
+     throws Exception
+  {
+    int count, total = 0;
+    while((count = deleteAllarmi(purgeChunkSize)) >= purgeChunkSize)
+      total += count;
+    total += count;
+
+    while((count = deleteCommlog(purgeChunkSize)) >= purgeChunkSize)
+      total += count;
+    total += count;
+
+    if(total > 0)
+      log.info("Cancellati " + total + " allarmi/commlog scaduti.");
   }
 
-  protected void resetActiveAllarms()
+  /**
+   * Cancella un blocco di allarmi scaduti.
+   * Le classi derivate possono ridefinirla per cancellare al massimo maxRows
+   * record per chiamata; questa implementazione chiama deleteAllarmi()
+   * e ritorna 0 (cancellazione completata).
+   * @param maxRows numero massimo di record da cancellare
+   * @return numero di record cancellati
+   * @throws Exception
+   */
+  protected int deleteAllarmi(int maxRows)
+     throws Exception
+  {
+    deleteAllarmi();
+    return 0;
+  }
+
+  /**
+   * Cancella un blocco di commlog scaduti.
+   * Vedi deleteAllarmi(int).
+   * @param maxRows numero massimo di record da cancellare
+   * @return numero di record cancellati
+   * @throws Exception
+   */
+  protected int deleteCommlog(int maxRows)
      throws Exception
   {
-    lastUpdNum = 0;
+    deleteCommlog();
+    return 0;
   }
 
   /**
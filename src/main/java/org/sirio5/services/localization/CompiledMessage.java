@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2026 Nicola De Nisco
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.sirio5.services.localization;
+
+import java.math.BigInteger;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.Formattable;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Messaggio con segnaposto precompilato.
+ * La stringa di formato (già tradotta) viene suddivisa una sola volta
+ * in parti fisse e argomenti; la formattazione diventa una semplice
+ * concatenazione. Sono gestiti direttamente %s, %d, %% e %n;
+ * formati più complessi (larghezza, precisione, indici espliciti, ecc.)
+ * vengono delegati a String.format().
+ *
+ * @author Nicola De Nisco
+ */
+public class CompiledMessage
+{
+  private static final Map<String, CompiledMessage> cache = new ConcurrentHashMap<>();
+  private static final int MAX_ENTRIES = 10000;
+  private static final boolean ASCII_DIGITS
+     = DecimalFormatSymbols.getInstance(Locale.getDefault(Locale.Category.FORMAT)).getZeroDigit() == '0';
+
+  private final String pattern;
+  private final boolean fallback;
+  private final String[] literals;
+  private final char[] types;
+  private final int length;
+
+  private CompiledMessage(String pattern)
+  {
+    this.pattern = pattern;
+
+    List<String> lsLit = new ArrayList<>();
+    StringBuilder types = new StringBuilder();
+    StringBuilder sb = new StringBuilder();
+    boolean ok = true;
+
+    for(int i = 0; i < pattern.length() && ok; i++)
+    {
+      char c = pattern.charAt(i);
+      if(c != '%')
+      {
+        sb.append(c);
+        continue;
+      }
+
+      char t = ++i < pattern.length() ? pattern.charAt(i) : 0;
+      switch(t)
+      {
+        case '%':
+          sb.append('%');
+          break;
+        case 'n':
+          sb.append(System.lineSeparator());
+          break;
+        case 's':
+        case 'd':
+          lsLit.add(sb.toString());
+          types.append(t);
+          sb.setLength(0);
+          break;
+        default:
+          ok = false;
+          break;
+      }
+    }
+    lsLit.add(sb.toString());
+
+    this.fallback = !ok;
+    this.literals = lsLit.toArray(new String[lsLit.size()]);
+    this.types = types.toString().toCharArray();
+    this.length = pattern.length();
+  }
+
+  /**
+   * Ritorna il messaggio compilato per la stringa di formato indicata.
+   * @param pattern stringa di formato (già tradotta)
+   * @return messaggio compilato (condiviso)
+   */
+  public static CompiledMessage compile(String pattern)
+  {
+    CompiledMessage cm = cache.get(pattern);
+    if(cm == null)
+    {
+      if(cache.size() >= MAX_ENTRIES)
+        cache.clear();
+
+      cm = new CompiledMessage(pattern);
+      cache.put(pattern, cm);
+    }
+    return cm;
+  }
+
+  /**
+   * Formatta il messaggio con gli argomenti indicati.
+   * Il risultato è identico a String.format(pattern, args).
+   * @param args argomenti
+   * @return messaggio formattato
+   */
+  public String format(Object... args)
+  {
+    if(fallback || args == null || args.length < types.length)
+      return String.format(pattern, args);
+
+    StringBuilder sb = new StringBuilder(length + 16 * types.length);
+    for(int i = 0; i < types.length; i++)
+    {
+      Object a = args[i];
+
+      if(types[i] == 'd' ? !isInteger(a) : a instanceof Formattable)
+        return String.format(pattern, args);
+
+      sb.append(literals[i]).append(a);
+    }
+
+    return sb.append(literals[types.length]).toString();
+  }
+
+  private static boolean isInteger(Object a)
+  {
+    return ASCII_DIGITS && (a instanceof Integer || a instanceof Long
+       || a instanceof Short || a instanceof Byte || a instanceof BigInteger);
+  }
+
+  public String getPattern()
+  {
+    return pattern;
+  }
+}
@@ -22,29 +22,43 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import org.apache.avalon.framework.activity.Disposable;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.fulcrum.localization.LocaleTokenizer;
 import org.apache.turbine.Turbine;
-import org.commonlib5.utils.FixedSizeMap;
 import org.commonlib5.utils.Pair;
 
 /**
  * Servizio di localizazione con il supporto della API Google per la traduzione.
+ * Le traduzioni automatiche sono conservate in una memoria persistente
+ * (vedi TranslationMemory) e richieste al servizio remoto in background.
  *
  * @author Nicola De Nisco
  */
 public class CoreGoogleLocalizationService extends CoreLocalizationService
+   implements Disposable
 {
   /** Logging */
   private static Log log = LogFactory.getLog(CoreGoogleLocalizationService.class);
 
   protected GoogleTranslate gt;
+  protected TranslationBackend backend;
+  protected TranslationMemory memory;
   protected String credFilePath;
-  protected FixedSizeMap<String, String> cacheMsg = new FixedSizeMap<>(1024);
-  protected boolean initialized;
+  protected volatile boolean initialized;
+
+  @Override
+  public void initialize()
+     throws Exception
+  {
+    super.initialize();
+
+    // backend e memoria delle traduzioni vengono preparati all'avvio del servizio
+    initGoogle();
+  }
 
   @Override
   public Locale getLocale(String header)
@@ -53,7 +67,7 @@ public class CoreGoogleLocalizationService extends CoreLocalizationService
       return displayLocale;
 
     initGoogle();
-    if(gt == null)
+    if(backend == null)
       return super.getLocale(header);
 
     LocaleTokenizer tok = new LocaleTokenizer(header);
@@ -66,45 +80,51 @@ public class CoreGoogleLocalizationService extends CoreLocalizationService
     return super.getLocale(header);
   }
 
+  /**
+   * Traduzione automatica.
+   * Le traduzioni sono lette dalla memoria delle traduzioni; i testi non ancora
+   * tradotti vengono accodati per il servizio remoto e nel frattempo
+   * viene usato il testo originale.
+   * @param stringa la stringa da tradurre
+   * @param locale la locale desiderata
+   * @return la stringa tradotta o null
+   */
   @Override
   protected String subTranslation(String stringa, Locale locale)
   {
     initGoogle();
 
-    try
-    {
-      // se la locale richiesta è it_IT la stringa si intende già tradotta
-      if(locale.equals(originLocale))
-        return stringa;
-
-      String value, key = stringa + "/" + locale;
-
-      if((value = cacheMsg.get(key)) != null)
-        return value;
+    // se la locale richiesta è it_IT la stringa si intende già tradotta
+    if(locale.equals(originLocale))
+      return stringa;
 
-      value = subTransSingle(stringa, locale);
-
-      if(value != null)
-        cacheMsg.put(key, value);
+    if(memory == null)
+      return null;
 
+    String value;
+    if((value = memory.get(stringa, locale.getLanguage())) != null)
       return value;
-    }
-    catch(Exception ex)
-    {
-      log.error("", ex);
-      return null;
-    }
+
+    memory.accoda(stringa, locale.getLanguage());
+    return null;
   }
 
+  /**
+   * Traduzione sincrona di una singola stringa.
+   * @param key la stringa da tradurre
+   * @param locale la locale desiderata
+   * @return la stringa tradotta o null
+   * @throws Exception
+   */
   protected String subTransSingle(String key, Locale locale)
      throws Exception
   {
-    if(gt == null)
+    if(backend == null)
       return null;
 
     List<Pair<String, String>> testi = new ArrayList<>();
     testi.add(new Pair<>(key, null));
-    gt.traduci(testi, originLocale.getLanguage(), locale.getLanguage(), "html");
+    backend.traduci(testi, originLocale.getLanguage(), locale.getLanguage(), "html");
     return testi.get(0).second;
   }
 
@@ -118,27 +138,88 @@ public class CoreGoogleLocalizationService extends CoreLocalizationService
       if(initialized)
         return;
 
-      initialized = true;
-      initWorker();
+      try
+      {
+        initWorker();
+      }
+      finally
+      {
+        // pubblicato solo a inizializzazione conclusa: backend e memory sono visibili agli altri thread
+        initialized = true;
+      }
     }
   }
 
   protected void initWorker()
   {
     Configuration conf = Turbine.getConfiguration();
+
+    if((backend = createBackend(conf)) == null)
+      return;
+
+    // all'arrivo di nuove traduzioni vengono rimosse dalla cache delle stringhe risolte
+    // (che contiene ancora il testo originale) solo le chiavi tradotte
+    File storeFile = getStoreFile(conf);
+    memory = new TranslationMemory(storeFile, backend, originLocale.getLanguage(),
+       conf.getLong("locale.translator.delayMillis", 500), (lingua, testi) -> clearLookupCache(lingua, testi),
+       conf.getInt("locale.translator.maxEntries", 20000), conf.getInt("locale.translator.maxPending", 1000),
+       conf.getLong("locale.translator.retryMillis", 600000));
+  }
+
+  /**
+   * Arresta il thread delle traduzioni automatiche.
+   */
+  public void shutdown()
+  {
+    if(memory != null)
+      memory.shutdown();
+  }
+
+  /**
+   * Avalon component lifecycle method
+   */
+  @Override
+  public void dispose()
+  {
+    shutdown();
+  }
+
+  /**
+   * Crea il servizio remoto di traduzione.
+   * Se è indicata una classe in 'locale.translator.classname' viene usata quella,
+   * altrimenti viene usato GoogleTranslate con il file di credenziali.
+   * @param conf configurazione
+   * @return servizio di traduzione oppure null se non disponibile
+   */
+  protected TranslationBackend createBackend(Configuration conf)
+  {
+    String className = conf.getString("locale.translator.classname", null);
+    if(className != null)
+    {
+      try
+      {
+        return (TranslationBackend) Class.forName(className).newInstance();
+      }
+      catch(Exception e)
+      {
+        log.error("Servizio di traduzione " + className + " non disponibile.", e);
+        return null;
+      }
+    }
+
     credFilePath = conf.getString("locale.google.credFile", null);
 
     if(credFilePath == null)
     {
       log.info("File credenziali non specificato.");
-      return;
+      return null;
     }
 
     File fcred = new File(credFilePath);
     if(!fcred.canRead())
     {
       log.info("File credenziali " + fcred.getAbsolutePath() + " non trovato o non leggibile.");
-      return;
+      return null;
     }
 
     try
@@ -146,11 +227,29 @@ public class CoreGoogleLocalizationService extends CoreLocalizationService
       gt = new GoogleTranslate(fcred);
       AccessToken token = gt.autorizza();
       log.info("Autorizzazione API google concessa con token " + token.getTokenValue());
+      return gt;
     }
     catch(Exception e)
     {
       gt = null;
       log.error("Autorizzazione API google fallita.", e);
+      return null;
     }
   }
+
+  /**
+   * Ritorna il file della memoria delle traduzioni.
+   * Per default è 'translations.txt' nella directory cache dell'applicazione.
+   * @param conf configurazione
+   * @return il file oppure null per non salvare le traduzioni
+   */
+  protected File getStoreFile(Configuration conf)
+  {
+    String storePath = conf.getString("locale.translator.storeFile", null);
+    if(storePath != null)
+      return new File(storePath);
+
+    String pathWork = conf.getString("pathWork", null);
+    return pathWork == null ? null : new File(pathWork, "cache/translations.txt");
+  }
 }
@@ -19,6 +19,8 @@ package org.sirio5.services.localization;
 
 import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
@@ -29,6 +31,9 @@ import org.apache.turbine.Turbine;
 import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.input.SAXBuilder;
+import org.sirio5.services.bus.BUS;
+import org.sirio5.services.bus.BusContext;
+import org.sirio5.services.bus.BusMessages;
 import org.sirio5.utils.SU;
 
 /**
@@ -50,13 +55,17 @@ public class CoreLocalizationService extends DefaultLocalizationService
   private static Log log = LogFactory.getLog(CoreLocalizationService.class);
   protected String xmlPath = null;
   protected Locale displayLocale = null;
-  protected Set<String> defaultSet = new HashSet<>();
-  protected Set<Locale> availableXmlLocale = new HashSet<>();
-  protected Map<Locale, Map<String, String>> allXmlMessageMap = new HashMap<>();
-  protected Map<String, Locale> cacheMatch = new HashMap<>();
-  protected Locale originLocale = Locale.ITALY;
+  protected volatile Set<String> defaultSet = new HashSet<>();
+  protected volatile Set<Locale> availableXmlLocale = new HashSet<>();
+  protected volatile Map<Locale, Map<String, String>> allXmlMessageMap = new ConcurrentHashMap<>();
+  protected volatile Map<String, Locale> cacheMatch = new ConcurrentHashMap<>();
+  protected volatile Locale originLocale = Locale.ITALY;
   protected boolean outputUnknowKey = false;
-  protected Map<String, Map<Locale, ResourceBundle>> bundles = new HashMap<>();
+  protected volatile Map<String, Map<Locale, ResourceBundle>> bundles = new ConcurrentHashMap<>();
+  /** cache delle traduzioni risolte: locale -> chiave originale -> traduzione */
+  protected volatile Map<Locale, Map<String, String>> lookupCache = new ConcurrentHashMap<>();
+  protected int maxLookupEntries = 50000;
+  protected final AtomicBoolean busRegistered = new AtomicBoolean();
 
   @Override
   public void initialize()
@@ -80,6 +89,7 @@ public class CoreLocalizationService extends DefaultLocalizationService
 
     // imposta emissione log delle stringe non localizzate
     outputUnknowKey = conf.getBoolean("outputUnknowKey", outputUnknowKey);
+    maxLookupEntries = conf.getInt("locale.cache.maxEntries", maxLookupEntries);
 
     super.initialize();
   }
@@ -99,30 +109,36 @@ public class CoreLocalizationService extends DefaultLocalizationService
       Element languages = root.getChild("LANGUAGES");
       List<Element> langList = languages.getChildren("LANG");
 
-      availableXmlLocale.clear();
+      // le nuove strutture sostituiscono le precedenti solo a caricamento completato
+      Set<Locale> newLocale = new HashSet<>();
+      Locale newOrigin = originLocale;
       for(Element e : langList)
       {
         String language = e.getAttributeValue("language");
         String country = e.getAttributeValue("country");
         Locale l = new Locale(language, country);
-        availableXmlLocale.add(l);
+        newLocale.add(l);
 
         String key = e.getAttributeValue("key");
         if(key.equals("DEFAULT"))
-          originLocale = l;
+          newOrigin = l;
       }
 
-      defaultSet.clear();
+      Set<String> newDefault = new HashSet<>();
       Element messages = root.getChild("MESSAGES");
       List<Element> msgList = messages.getChildren("MSG");
       for(Element e : msgList)
       {
         String defmsg = e.getChildTextTrim("DEFAULT");
         if(!StringUtils.isEmpty(defmsg))
-          if(!defaultSet.add(StringUtils.deleteWhitespace(defmsg)))
+          if(!newDefault.add(StringUtils.deleteWhitespace(defmsg)))
             log.warn("key [" + defmsg + "] duplicated");
       }
 
+      availableXmlLocale = newLocale;
+      originLocale = newOrigin;
+      defaultSet = newDefault;
+
       log.debug("Caricati " + defaultSet.size() + " messaggi.");
     }
     catch(Exception e)
@@ -206,15 +222,77 @@ public class CoreLocalizationService extends DefaultLocalizationService
       log.error("Error loading localized XML string.", e);
     }
 
-    allXmlMessageMap.put(l, msgMap);
-    return msgMap;
+    Map<String, String> prev = allXmlMessageMap.putIfAbsent(l, msgMap);
+    return prev == null ? msgMap : prev;
   }
 
+  /**
+   * Ritorna la traduzione della chiave.
+   * Il risultato finale (anche la chiave stessa se la traduzione non esiste)
+   * viene memorizzato per chiave originale e locale: le chiamate successive
+   * non eseguono più la normalizzazione della chiave né le ricerche su XML e bundle.
+   * @param bundleName nome del bundle (null per quello di default)
+   * @param locale locale richiesta (null per quella di default)
+   * @param key chiave/messaggio da tradurre
+   * @return la traduzione
+   */
   @Override
   public String getString(String bundleName, Locale locale, String key)
+  {
+    if(key == null)
+      return null;
+
+    if(locale == null)
+    {
+      // se locale è nullo si intende quello di default
+      locale = displayLocale;
+    }
+
+    Map<String, String> cache = getLookupCache(locale);
+    String cacheKey = bundleName == null ? key : bundleName + '\u0000' + key;
+
+    String value = cache.get(cacheKey);
+    if(value == null)
+    {
+      if((value = lookupString(bundleName, locale, key)) == null)
+        return null;
+
+      // le chiavi possono contenere testo dinamico: la cache non deve crescere senza limiti
+      if(cache.size() >= maxLookupEntries)
+        cache.clear();
+
+      cache.put(cacheKey, value);
+    }
+
+    return value;
+  }
+
+  protected Map<String, String> getLookupCache(Locale locale)
+  {
+    Map<Locale, Map<String, String>> lc = lookupCache;
+    Map<String, String> cache = lc.get(locale);
+    if(cache == null)
+      cache = lc.computeIfAbsent(locale, (l) -> new ConcurrentHashMap<>());
+    return cache;
+  }
+
+  /**
+   * Ricerca effettiva della traduzione (XML, bundle, traduzione alternativa).
+   * @param bundleName nome del bundle (null per quello di default)
+   * @param locale locale richiesta
+   * @param key chiave/messaggio da tradurre
+   * @return la traduzione oppure la chiave se non disponibile
+   */
+  protected String lookupString(String bundleName, Locale locale, String key)
   {
     String value = null;
 
+    if(!busRegistered.get() && busRegistered.compareAndSet(false, true))
+    {
+      // registrazione ritardata: il bus potrebbe non essere ancora attivo durante initialize()
+      BUS.registerEventListner(CoreLocalizationService.class.getName(), this::busMessage);
+    }
+
     if((key = SU.okStrNull(key)) == null)
       return null;
 
@@ -239,6 +317,69 @@ public class CoreLocalizationService extends DefaultLocalizationService
     return key;
   }
 
+  protected int busMessage(int msgID, Object originator, BusContext context)
+     throws Exception
+  {
+    if(msgID == BusMessages.CLEAR_GLOBAL_CACHE)
+      reloadTranslations();
+
+    return 0;
+  }
+
+  /**
+   * Ricarica le traduzioni (file XML e bundle).
+   * Viene eseguita alla ricezione del messaggio CLEAR_GLOBAL_CACHE.
+   * Le nuove strutture vengono costruite a parte; la cache delle traduzioni
+   * viene sostituita per ultima, quindi le richieste in corso continuano
+   * ad usare i dati precedenti fino al termine del caricamento.
+   */
+  public synchronized void reloadTranslations()
+  {
+    if(xmlPath != null)
+      caricaDefaultXML();
+
+    ResourceBundle.clearCache();
+    allXmlMessageMap = new ConcurrentHashMap<>();
+    bundles = new ConcurrentHashMap<>();
+    cacheMatch = new ConcurrentHashMap<>();
+    lookupCache = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Svuota la cache delle traduzioni risolte.
+   */
+  public void clearLookupCache()
+  {
+    lookupCache = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Svuota la cache delle traduzioni risolte per una lingua.
+   * @param language lingua (codice ISO)
+   */
+  public void clearLookupCache(String language)
+  {
+    lookupCache.keySet().removeIf((l) -> SU.isEqu(l.getLanguage(), language));
+  }
+
+  /**
+   * Rimuove dalla cache delle traduzioni risolte alcune chiavi di una lingua.
+   * @param language lingua (codice ISO)
+   * @param keys chiavi originali da rimuovere (per tutti i bundle)
+   */
+  public void clearLookupCache(String language, Collection<String> keys)
+  {
+    Set<String> setKeys = keys instanceof Set ? (Set<String>) keys : new HashSet<>(keys);
+    for(Map.Entry<Locale, Map<String, String>> e : lookupCache.entrySet())
+    {
+      if(!SU.isEqu(e.getKey().getLanguage(), language))
+        continue;
+
+      // la chiave di cache può essere preceduta dal nome del bundle (vedi getString)
+      e.getValue().keySet().removeIf((ck) -> setKeys.contains(SU.okStr(ck.substring(ck.indexOf('\u0000') + 1))));
+    }
+  }
+
   protected String translateFromXml(Locale locale, String key)
   {
     String value = null, mapKey = null;
@@ -335,8 +476,8 @@ public class CoreLocalizationService extends DefaultLocalizationService
     Locale rv = cacheMatch.get(header);
     if(rv == null)
     {
-      rv = getLocaleInternal(header);
-      cacheMatch.put(header, rv);
+      if((rv = getLocaleInternal(header)) != null)
+        cacheMatch.put(header, rv);
     }
 
     return rv;
@@ -433,7 +574,7 @@ public class CoreLocalizationService extends DefaultLocalizationService
     Map<Locale, ResourceBundle> bundlesByLocale = bundles.get(bundleName);
     if(bundlesByLocale == null)
     {
-      bundlesByLocale = new HashMap<>();
+      bundlesByLocale = new ConcurrentHashMap<>();
       bundles.put(bundleName, bundlesByLocale);
     }
 
@@ -37,7 +37,7 @@ import org.json.JSONObject;
  *
  * @author Nicola De Nisco
  */
-public class GoogleTranslate
+public class GoogleTranslate implements TranslationBackend
 {
   private File credFile;
   private static final String SCOPE = "https://www.googleapis.com/auth/cloud-platform";
@@ -104,6 +104,7 @@ public class GoogleTranslate
    * @param formatoTesto formato del testo (text o html)
    * @throws Exception
    */
+  @Override
   public void traduci(List<Pair<String, String>> testi, String linguaOrigine, String linguaDestinazione, String formatoTesto)
      throws Exception
   {
@@ -144,4 +145,10 @@ public class GoogleTranslate
       p.second = jo.getString("translatedText");
     }
   }
+
+  @Override
+  public int getMaxNumStringhe()
+  {
+    return MAX_NUM_STRINGHE;
+  }
 }
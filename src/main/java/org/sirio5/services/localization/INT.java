@@ -43,6 +43,38 @@ public class INT
 
   public static String I(String formatString, Object... objects)
   {
-    return String.format(resolve(formatString), objects);
+    return CompiledMessage.compile(resolve(formatString)).format(objects);
+  }
+
+  /**
+   * Messaggio tradotto differito.
+   * Traduzione e formattazione vengono eseguite solo alla chiamata di toString();
+   * da usare nelle log, es. log.debug(INT.L("Letto %s", file)):
+   * se il livello di log non è attivo il messaggio non viene mai prodotto.
+   * @param formatString stringa di formato da tradurre
+   * @param objects argomenti
+   * @return messaggio differito
+   */
+  public static Object L(String formatString, Object... objects)
+  {
+    return new LazyMessage(formatString, objects);
+  }
+
+  private static class LazyMessage
+  {
+    private final String formatString;
+    private final Object[] objects;
+
+    public LazyMessage(String formatString, Object[] objects)
+    {
+      this.formatString = formatString;
+      this.objects = objects;
+    }
+
+    @Override
+    public String toString()
+    {
+      return I(formatString, objects);
+    }
   }
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2026 Nicola De Nisco
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.sirio5.services.localization;
+
+import java.util.List;
+import org.commonlib5.utils.Pair;
+
+/**
+ * Servizio remoto di traduzione automatica.
+ * L'implementazione standard è GoogleTranslate; è possibile indicarne
+ * una diversa con il parametro 'locale.translator.classname'.
+ *
+ * @author Nicola De Nisco
+ */
+public interface TranslationBackend
+{
+  /**
+   * Traduzione di una lista di stringhe.
+   * Il risultato della traduzione viene salvato nella coppia che contiene l'originale.
+   * @param testi coppia di stringhe da tradurre e tradotta (quella tradotta verrà sovrascitta)
+   * @param linguaOrigine lingua di origine dei testi
+   * @param linguaDestinazione lingua richiesta per la traduzione
+   * @param formatoTesto formato del testo (text o html)
+   * @throws Exception
+   */
+  public void traduci(List<Pair<String, String>> testi, String linguaOrigine, String linguaDestinazione, String formatoTesto)
+     throws Exception;
+
+  /**
+   * Numero massimo di stringhe per ogni chiamata a traduci().
+   * @return numero di stringhe
+   */
+  public int getMaxNumStringhe();
+}
@@ -0,0 +1,407 @@
+/*
+ * Copyright (C) 2026 Nicola De Nisco
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.sirio5.services.localization;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.commonlib5.utils.Pair;
+
+/**
+ * Memoria delle traduzioni automatiche.
+ * Le traduzioni ottenute dal servizio remoto vengono salvate su un file
+ * locale (una riga per traduzione, in sola aggiunta) e ricaricate all'avvio.
+ * Le stringhe non ancora tradotte vengono accodate e inviate al servizio
+ * remoto a blocchi da un thread in background; nel frattempo il chiamante
+ * utilizza la stringa originale.
+ * La memoria conserva al massimo maxEntries traduzioni (le meno usate
+ * vengono scartate) e il file viene compattato quando contiene più del
+ * doppio delle righe necessarie; anche le richieste in attesa sono limitate
+ * a maxPending: le eccedenti verranno accodate ad una richiesta successiva.
+ * I testi per cui il servizio remoto fallisce o non restituisce una traduzione
+ * non vengono richiesti di nuovo prima di retryMillis.
+ *
+ * @author Nicola De Nisco
+ */
+public class TranslationMemory
+{
+  private static final Log log = LogFactory.getLog(TranslationMemory.class);
+
+  protected final File storeFile;
+  protected final TranslationBackend backend;
+  protected final String linguaOrigine;
+  protected final long delayMillis;
+  protected final BiConsumer<String, Collection<String>> onTranslated;
+  protected final int maxEntries, maxPending;
+  protected final long retryMillis;
+  protected final Map<String, String> mapTrad;
+  protected final Set<String> pending = ConcurrentHashMap.newKeySet();
+  /** testi non tradotti: chiave -> istante dal quale possono essere richiesti di nuovo */
+  protected final Map<String, Long> failed = new ConcurrentHashMap<>();
+  protected final LinkedBlockingQueue<Pair<String, String>> queue = new LinkedBlockingQueue<>();
+  protected final Thread worker;
+  protected int fileLines = 0;
+
+  /**
+   * Costruttore.
+   * @param storeFile file di memorizzazione delle traduzioni (null per non salvare)
+   * @param backend servizio remoto di traduzione
+   * @param linguaOrigine lingua dei testi originali
+   * @param delayMillis attesa per accumulare altri testi prima dell'invio
+   * @param onTranslated notifica dell'arrivo di nuove traduzioni (lingua, testi originali tradotti);
+   * non viene chiamata se nessun testo del blocco è stato tradotto
+   * @param maxEntries numero massimo di traduzioni conservate
+   * @param maxPending numero massimo di testi in attesa di traduzione
+   * @param retryMillis attesa prima di richiedere di nuovo un testo non tradotto
+   */
+  public TranslationMemory(File storeFile, TranslationBackend backend, String linguaOrigine,
+     long delayMillis, BiConsumer<String, Collection<String>> onTranslated, int maxEntries, int maxPending,
+     long retryMillis)
+  {
+    this.storeFile = storeFile;
+    this.backend = backend;
+    this.linguaOrigine = linguaOrigine;
+    this.delayMillis = Math.max(0, delayMillis);
+    this.onTranslated = onTranslated;
+    this.maxEntries = Math.max(1, maxEntries);
+    this.maxPending = Math.max(1, maxPending);
+    this.retryMillis = Math.max(0, retryMillis);
+
+    this.mapTrad = new LinkedHashMap<String, String>(1024, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+      {
+        return size() > TranslationMemory.this.maxEntries;
+      }
+    };
+
+    load();
+
+    worker = new Thread(() -> runWorker());
+    worker.setName("translate");
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  private static String buildKey(String testo, String lingua)
+  {
+    return lingua + '\t' + testo;
+  }
+
+  /**
+   * Ritorna la traduzione memorizzata.
+   * @param testo testo originale
+   * @param lingua lingua di destinazione
+   * @return traduzione oppure null se non disponibile
+   */
+  public String get(String testo, String lingua)
+  {
+    synchronized(mapTrad)
+    {
+      return mapTrad.get(buildKey(testo, lingua));
+    }
+  }
+
+  /**
+   * Accoda un testo per la traduzione; ritorna immediatamente.
+   * Se le richieste in attesa hanno raggiunto il limite il testo viene ignorato.
+   * @param testo testo originale
+   * @param lingua lingua di destinazione
+   */
+  public void accoda(String testo, String lingua)
+  {
+    if(pending.size() >= maxPending)
+      return;
+
+    String key = buildKey(testo, lingua);
+    Long retry = failed.get(key);
+    if(retry != null)
+    {
+      if(System.currentTimeMillis() < retry)
+        return;
+      failed.remove(key);
+    }
+
+    if(pending.add(key))
+      queue.offer(new Pair<>(lingua, testo));
+  }
+
+  /**
+   * Carica le traduzioni salvate su file.
+   */
+  protected void load()
+  {
+    if(storeFile == null || !storeFile.canRead())
+      return;
+
+    try(BufferedReader rd = new BufferedReader(
+       new InputStreamReader(new FileInputStream(storeFile), StandardCharsets.UTF_8)))
+    {
+      String line;
+      synchronized(mapTrad)
+      {
+        while((line = rd.readLine()) != null)
+        {
+          String[] ss = line.split("\t", -1);
+          if(ss.length == 3)
+            mapTrad.put(buildKey(unescape(ss[1]), ss[0]), unescape(ss[2]));
+          fileLines++;
+        }
+      }
+
+      log.info("Caricate " + size() + " traduzioni da " + storeFile.getAbsolutePath());
+    }
+    catch(Exception ex)
+    {
+      log.error("Errore leggendo " + storeFile.getAbsolutePath() + ":", ex);
+    }
+
+    compattaSeNecessario();
+  }
+
+  /**
+   * Riscrive il file con le sole traduzioni in memoria se contiene
+   * più del doppio delle righe necessarie (traduzioni duplicate o scartate).
+   */
+  protected void compattaSeNecessario()
+  {
+    if(storeFile == null || fileLines <= 2 * maxEntries)
+      return;
+
+    List<Map.Entry<String, String>> lsTrad;
+    synchronized(mapTrad)
+    {
+      lsTrad = new ArrayList<>(mapTrad.entrySet());
+    }
+
+    File tmpFile = new File(storeFile.getAbsolutePath() + ".tmp");
+    try
+    {
+      try(Writer wr = new OutputStreamWriter(new FileOutputStream(tmpFile), StandardCharsets.UTF_8))
+      {
+        for(Map.Entry<String, String> e : lsTrad)
+        {
+          String key = e.getKey();
+          int pos = key.indexOf('\t');
+          wr.write(key.substring(0, pos) + "\t" + escape(key.substring(pos + 1)) + "\t" + escape(e.getValue()) + "\n");
+        }
+      }
+
+      Files.move(tmpFile.toPath(), storeFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      log.info("Compattato " + storeFile.getAbsolutePath() + ": da " + fileLines + " a " + lsTrad.size() + " righe.");
+      fileLines = lsTrad.size();
+    }
+    catch(Exception ex)
+    {
+      log.error("Errore compattando " + storeFile.getAbsolutePath() + ":", ex);
+      tmpFile.delete();
+    }
+  }
+
+  protected void runWorker()
+  {
+    while(true)
+    {
+      try
+      {
+        Pair<String, String> first = queue.poll(3, TimeUnit.SECONDS);
+        if(first == null)
+          continue;
+
+        // attende brevemente per raccogliere le altre stringhe della stessa pagina
+        if(delayMillis > 0)
+          Thread.sleep(delayMillis);
+
+        List<Pair<String, String>> lsReq = new ArrayList<>();
+        lsReq.add(first);
+        queue.drainTo(lsReq);
+
+        // raggruppa per lingua di destinazione
+        Map<String, List<Pair<String, String>>> mapLingue = new LinkedHashMap<>();
+        for(Pair<String, String> r : lsReq)
+          mapLingue.computeIfAbsent(r.first, (l) -> new ArrayList<>()).add(new Pair<>(r.second, null));
+
+        for(Map.Entry<String, List<Pair<String, String>>> e : mapLingue.entrySet())
+          traduci(e.getKey(), e.getValue());
+      }
+      catch(InterruptedException ex)
+      {
+        break;
+      }
+      catch(Throwable t)
+      {
+        log.error("Errore traduzione automatica:", t);
+      }
+    }
+  }
+
+  protected void traduci(String lingua, List<Pair<String, String>> testi)
+  {
+    List<String> tradotti = new ArrayList<>();
+    int max = Math.max(1, backend.getMaxNumStringhe());
+    for(int i = 0; i < testi.size(); i += max)
+    {
+      List<Pair<String, String>> blocco = testi.subList(i, Math.min(testi.size(), i + max));
+
+      try
+      {
+        backend.traduci(blocco, linguaOrigine, lingua, "html");
+        salva(lingua, blocco);
+      }
+      catch(Exception ex)
+      {
+        log.error("Traduzione di " + blocco.size() + " testi in " + lingua + " fallita:", ex);
+      }
+      finally
+      {
+        // i testi non tradotti vengono richiesti di nuovo solo dopo retryMillis
+        long retry = System.currentTimeMillis() + retryMillis;
+        if(failed.size() >= maxEntries)
+          failed.clear();
+
+        for(Pair<String, String> p : blocco)
+        {
+          String key = buildKey(p.first, lingua);
+          if(p.second != null && get(p.first, lingua) != null)
+            tradotti.add(p.first);
+          else
+            failed.put(key, retry);
+          pending.remove(key);
+        }
+      }
+    }
+
+    if(onTranslated != null && !tradotti.isEmpty())
+      onTranslated.accept(lingua, tradotti);
+  }
+
+  protected void salva(String lingua, List<Pair<String, String>> blocco)
+     throws Exception
+  {
+    synchronized(mapTrad)
+    {
+      for(Pair<String, String> p : blocco)
+      {
+        if(p.second != null)
+          mapTrad.put(buildKey(p.first, lingua), p.second);
+      }
+    }
+
+    if(storeFile == null)
+      return;
+
+    storeFile.getParentFile().mkdirs();
+    try(Writer wr = new OutputStreamWriter(new FileOutputStream(storeFile, true), StandardCharsets.UTF_8))
+    {
+      for(Pair<String, String> p : blocco)
+      {
+        if(p.second != null)
+        {
+          wr.write(lingua + "\t" + escape(p.first) + "\t" + escape(p.second) + "\n");
+          fileLines++;
+        }
+      }
+    }
+
+    compattaSeNecessario();
+  }
+
+  protected static String escape(String s)
+  {
+    return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+  }
+
+  protected static String unescape(String s)
+  {
+    if(s.indexOf('\\') == -1)
+      return s;
+
+    StringBuilder sb = new StringBuilder(s.length());
+    for(int i = 0; i < s.length(); i++)
+    {
+      char c = s.charAt(i);
+      if(c == '\\' && i + 1 < s.length())
+      {
+        switch(c = s.charAt(++i))
+        {
+          case 't':
+            c = '\t';
+            break;
+          case 'n':
+            c = '\n';
+            break;
+          case 'r':
+            c = '\r';
+            break;
+        }
+      }
+      sb.append(c);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Arresta il thread di traduzione; le richieste in coda vengono abbandonate.
+   */
+  public void shutdown()
+  {
+    worker.interrupt();
+
+    try
+    {
+      worker.join(5000);
+    }
+    catch(InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public int size()
+  {
+    synchronized(mapTrad)
+    {
+      return mapTrad.size();
+    }
+  }
+
+  public int getPending()
+  {
+    return queue.size();
+  }
+}
@@ -70,6 +70,13 @@ import org.sirio5.utils.format.ValutaServiceFormat;
 
 /**
  * Implementazione standard del gestore modelli XML.
+ * Le definizioni sono conservate in un registro immutabile (ModelliXMLRegistry)
+ * sostituito in blocco ad ogni rilettura.
+ * NOTA per le classi derivate: i campi protetti pwm, swm, doc e arListeSql
+ * non esistono più; al loro posto vanno usati getRegistry() oppure
+ * i metodi deprecati getPwm(), getSwm() e getDoc().
+ * La costruzione del documento si personalizza ridefinendo buildDocument(Map);
+ * buildDocument() è final.
  *
  * @author Nicola De Nisco
  */
@@ -78,10 +85,13 @@ public class CoreModelliXML extends AbstractCoreBaseService
 {
   /** Logging */
   private static final Log log = LogFactory.getLog(CoreModelliXML.class);
-  protected PeerWrapperXmlMaker pwm = new PeerWrapperXmlMaker();
-  protected SqlWrapperXmlMaker swm = new SqlWrapperXmlMaker();
   protected PeerWrapperTmapMaker twm = new PeerWrapperTmapMaker();
-  protected Document doc = null;
+  protected TorqueObjectManager tom = null;
+  protected volatile ModelliXMLRegistry registry = null;
+  protected final Map<File, ParsedFile> parsedFiles = new HashMap<>();
+  /** files riletti ma non ancora confrontati da reloadXML() */
+  protected final Set<File> reparsedFiles = new HashSet<>();
+  protected Thread watchThread = null;
   protected List<File> vFilesXml = new ArrayList<>();
   protected boolean rigelInitOK = false;
   protected String baseFormUrl, baseListUrl, baseFormPopup, baseListPopup;
@@ -91,7 +101,6 @@ public class CoreModelliXML extends AbstractCoreBaseService
   protected boolean attivaProtezioneCSRF = true;
   //
   public static final String WrapperCacheBaseKey = "WrapperCacheBaseKey";
-  protected final ArrayList<String> arListeSql = new ArrayList<>();
 
   @Override
   public void coreInit()
@@ -128,15 +137,11 @@ public class CoreModelliXML extends AbstractCoreBaseService
     if(vFilesXml.isEmpty())
       die("Nessun file XML specificato.");
 
-    doc = buildDocument();
-
-    TorqueObjectManager tom = new TorqueObjectManager();
+    tom = new TorqueObjectManager();
     tom.setBasePeerArray(cfg.getStringArray("basePeer"));
     tom.setBaseObjectArray(cfg.getStringArray("baseObject"));
 
-    pwm.setTObjMan(tom);
-    pwm.setDocument(doc);
-    swm.setDocument(doc);
+    reloadXML(true);
     twm.setTObjMan(tom);
 
     twm.setBaseFormUrl(baseFormUrl);
@@ -173,6 +178,36 @@ public class CoreModelliXML extends AbstractCoreBaseService
 
     tryInitRigelPath();
     caricaListaSql();
+
+    // controllo periodico delle modifiche ai files XML (tipicamente in sviluppo)
+    int watchSeconds = cfg.getInt("watchSeconds", 0);
+    if(watchSeconds > 0)
+    {
+      watchThread = new Thread(() -> runWatch(watchSeconds * 1000L));
+      watchThread.setName("modellixml-watch");
+      watchThread.setDaemon(true);
+      watchThread.start();
+    }
+  }
+
+  protected void runWatch(long intervalMillis)
+  {
+    while(true)
+    {
+      try
+      {
+        Thread.sleep(intervalMillis);
+        reloadXML(false);
+      }
+      catch(InterruptedException ex)
+      {
+        break;
+      }
+      catch(Throwable t)
+      {
+        log.error("Errore rilettura modelli XML:", t);
+      }
+    }
   }
 
   protected void addFilesToParse(String[] fileNames)
@@ -195,6 +230,8 @@ public class CoreModelliXML extends AbstractCoreBaseService
   @Override
   public void shutdown()
   {
+    if(watchThread != null)
+      watchThread.interrupt();
   }
 
   public void tryInitRigelPath()
@@ -753,25 +790,138 @@ public class CoreModelliXML extends AbstractCoreBaseService
     return url + sds;
   }
 
+  /**
+   * Rilettura forzata dei files XML.
+   * Vengono riletti solo i files modificati ma il nuovo registro viene
+   * comunque installato, anche se nessuna definizione è cambiata.
+   * @throws Exception
+   */
   @Override
   public void forceReloadXML()
      throws Exception
   {
-    doc = buildDocument();
-    pwm.setDocument(doc);
-    swm.setDocument(doc);
+    reloadXML(true);
   }
 
-  public Document buildDocument()
+  /**
+   * Rilettura incrementale dei files XML.
+   * Il nuovo registro viene costruito completamente prima di sostituire
+   * il precedente; se almeno una definizione è cambiata le cache wrapper
+   * delle sessioni vengono sostituite al prossimo accesso (vedi getWrapperCache).
+   * @param always vero per installare il nuovo registro anche senza modifiche
+   * @return numero di definizioni modificate, aggiunte o rimosse
+   * @throws Exception
+   */
+  public synchronized int reloadXML(boolean always)
+     throws Exception
+  {
+    if(!always && reparsedFiles.isEmpty() && getModifiedFiles().isEmpty())
+      return 0;
+
+    // i files effettivamente riletti vengono raccolti durante la costruzione del documento:
+    // un file salvato dopo il controllo precedente viene comunque confrontato
+    Map<String, Map<String, File>> origins = new HashMap<>();
+    ModelliXMLRegistry prev = registry;
+    Document doc = buildDocument(origins);
+    List<File> lsModified = new ArrayList<>(reparsedFiles);
+    reparsedFiles.clear();
+
+    ModelliXMLRegistry reg = new ModelliXMLRegistry(doc, tom, origins, prev, lsModified);
+    int changed = reg.getChangedCount();
+    if(changed == 0 && !always)
+    {
+      // files salvati ma senza modifiche alle definizioni effettive
+      log.info("Modelli XML riletti senza modifiche: " + lsModified);
+      return 0;
+    }
+
+    setRegistry(reg);
+    if(prev != null)
+      log.info("Modelli XML riletti: " + lsModified + " definizioni modificate " + changed);
+
+    return changed;
+  }
+
+  protected void setRegistry(ModelliXMLRegistry reg)
+  {
+    registry = reg;
+  }
+
+  /**
+   * Ritorna il registro delle definizioni corrente.
+   * @return registro (immutabile)
+   */
+  public ModelliXMLRegistry getRegistry()
+  {
+    return registry;
+  }
+
+  /**
+   * Costruttore wrapper Peer del registro corrente.
+   * @return costruttore wrapper
+   * @deprecated sostituisce il campo pwm; usare getRegistry().pwm
+   */
+  @Deprecated
+  protected PeerWrapperXmlMaker getPwm()
+  {
+    return registry.pwm;
+  }
+
+  /**
+   * Costruttore wrapper SQL del registro corrente.
+   * @return costruttore wrapper
+   * @deprecated sostituisce il campo swm; usare getRegistry().swm
+   */
+  @Deprecated
+  protected SqlWrapperXmlMaker getSwm()
+  {
+    return registry.swm;
+  }
+
+  /**
+   * Documento fusione del registro corrente.
+   * @return documento (condiviso, non va modificato)
+   * @deprecated sostituisce il campo doc; usare getDocument()
+   */
+  @Deprecated
+  protected Document getDoc()
+  {
+    return registry.doc;
+  }
+
+  /**
+   * Costruisce il documento fusione dei files XML.
+   * Equivale a buildDocument(Map) senza raccolta dei files di provenienza.
+   * Il metodo è final perché la rilettura (reloadXML) usa solo buildDocument(Map):
+   * le classi derivate che personalizzano la costruzione del documento
+   * devono ridefinire quest'ultimo.
+   * @return documento fusione
+   * @throws Exception
+   */
+  public final synchronized Document buildDocument()
+     throws Exception
+  {
+    return buildDocument(new HashMap<>());
+  }
+
+  /**
+   * Costruisce il documento fusione dei files XML.
+   * Vengono letti solo i files modificati dall'ultima lettura;
+   * per gli altri viene riutilizzato il documento già letto.
+   * I files riletti vengono ricordati e confrontati dalla successiva reloadXML().
+   * @param origins viene popolata con il file di provenienza di ogni definizione (sezione, nome)
+   * @return documento fusione
+   * @throws Exception
+   */
+  public synchronized Document buildDocument(Map<String, Map<String, File>> origins)
      throws Exception
   {
     if(vFilesXml.size() == 1)
     {
       File fxml = (File) vFilesXml.get(0);
-
-      log.info("Leggo " + fxml.getAbsolutePath());
-      SAXBuilder builder = new SAXBuilder();
-      return builder.build(fxml);
+      Document d = getParsedFile(fxml).doc;
+      collectOrigins(d, fxml, origins);
+      return d.clone();
     }
 
     // crea una hastable per il livello principale
@@ -781,10 +931,7 @@ public class CoreModelliXML extends AbstractCoreBaseService
     for(int i = 0; i < vFilesXml.size(); i++)
     {
       File fxml = (File) vFilesXml.get(i);
-
-      log.info("Merge multipli XML dal file " + fxml.getAbsolutePath());
-      SAXBuilder builder = new SAXBuilder();
-      Document d = builder.build(fxml);
+      Document d = getParsedFile(fxml).doc;
 
       List tipiListe = d.getRootElement().getChildren();
       for(Iterator itTls = tipiListe.iterator(); itTls.hasNext();)
@@ -801,6 +948,8 @@ public class CoreModelliXML extends AbstractCoreBaseService
           htMainLevel.put(ename, htItemLevel);
         }
 
+        Map<String, File> htOrigin = origins.computeIfAbsent(ename, (k) -> new HashMap<>());
+
         // aggiunge tutte le liste contenute <clienti></clienti> <indirizzi></indirizzi>
         List liste = e.getChildren();
         for(Iterator itLst = liste.iterator(); itLst.hasNext();)
@@ -810,7 +959,10 @@ public class CoreModelliXML extends AbstractCoreBaseService
 
           // scarta i duplicati
           if(htItemLevel.get(iname) == null)
+          {
             htItemLevel.put(iname, l.clone());
+            htOrigin.put(iname, fxml);
+          }
         }
       }
     }
@@ -841,10 +993,82 @@ public class CoreModelliXML extends AbstractCoreBaseService
     return mergeDoc;
   }
 
+  private void collectOrigins(Document d, File fxml, Map<String, Map<String, File>> origins)
+  {
+    for(Element e : d.getRootElement().getChildren())
+    {
+      Map<String, File> htOrigin = origins.computeIfAbsent(e.getName(), (k) -> new HashMap<>());
+      for(Element l : e.getChildren())
+        htOrigin.putIfAbsent(l.getName(), fxml);
+    }
+  }
+
+  /**
+   * Ritorna il documento letto da un file XML.
+   * Il file viene riletto solo se modificato (data o dimensione).
+   * @param fxml file XML
+   * @return file letto
+   * @throws Exception
+   */
+  protected ParsedFile getParsedFile(File fxml)
+     throws Exception
+  {
+    ParsedFile pf = parsedFiles.get(fxml);
+    if(pf == null || pf.isModified())
+    {
+      log.info("Leggo " + fxml.getAbsolutePath());
+      pf = new ParsedFile(fxml);
+      parsedFiles.put(fxml, pf);
+      reparsedFiles.add(fxml);
+    }
+
+    return pf;
+  }
+
+  /**
+   * Verifica se almeno uno dei files XML è stato modificato dall'ultima lettura.
+   * @return lista dei files modificati (vuota se nessuno)
+   */
+  public synchronized List<File> getModifiedFiles()
+  {
+    ArrayList<File> rv = new ArrayList<>();
+    for(File f : vFilesXml)
+    {
+      ParsedFile pf = parsedFiles.get(f);
+      if(pf == null || pf.isModified())
+        rv.add(f);
+    }
+    return rv;
+  }
+
+  /**
+   * File XML già letto.
+   */
+  protected static class ParsedFile
+  {
+    public final File file;
+    public final long lastModified, length;
+    public final Document doc;
+
+    public ParsedFile(File file)
+       throws Exception
+    {
+      this.lastModified = file.lastModified();
+      this.length = file.length();
+      this.file = file;
+      this.doc = new SAXBuilder().build(file);
+    }
+
+    public boolean isModified()
+    {
+      return file.lastModified() != lastModified || file.length() != length;
+    }
+  }
+
   @Override
   public Document getDocument()
   {
-    return doc;
+    return registry.doc;
   }
 
   /////////////////////////////////////////////////////////////////////////////////////////
@@ -855,7 +1079,7 @@ public class CoreModelliXML extends AbstractCoreBaseService
      throws Exception
   {
     tryInitRigelPath();
-    return pwm.getLista(nomeLista);
+    return registry.pwm.getLista(nomeLista);
   }
 
   @Override
@@ -863,7 +1087,7 @@ public class CoreModelliXML extends AbstractCoreBaseService
      throws Exception
   {
     tryInitRigelPath();
-    return pwm.getListaEdit(nomeLista);
+    return registry.pwm.getListaEdit(nomeLista);
   }
 
   @Override
@@ -871,7 +1095,7 @@ public class CoreModelliXML extends AbstractCoreBaseService
      throws Exception
   {
     tryInitRigelPath();
-    return pwm.getForm(nomeForm);
+    return registry.pwm.getForm(nomeForm);
   }
 
   @Override
@@ -879,13 +1103,14 @@ public class CoreModelliXML extends AbstractCoreBaseService
      throws Exception
   {
     tryInitRigelPath();
+    ModelliXMLRegistry reg = registry;
     try
     {
-      return pwm.getListaXml(nomeLista, true);
+      return reg.pwm.getListaXml(nomeLista, true);
     }
     catch(MissingListException | MissingSectionException ex1)
     {
-      return pwm.getListaXmlFromListe(nomeLista, true);
+      return reg.pwm.getListaXmlFromListe(nomeLista, true);
     }
   }
 
@@ -897,7 +1122,7 @@ public class CoreModelliXML extends AbstractCoreBaseService
      throws Exception
   {
     tryInitRigelPath();
-    return swm.getLista(nomeLista);
+    return registry.swm.getLista(nomeLista);
   }
 
   @Override
@@ -905,7 +1130,7 @@ public class CoreModelliXML extends AbstractCoreBaseService
      throws Exception
   {
     tryInitRigelPath();
-    return swm.getForm(nomeForm);
+    return registry.swm.getForm(nomeForm);
   }
 
   @Override
@@ -913,13 +1138,14 @@ public class CoreModelliXML extends AbstractCoreBaseService
      throws Exception
   {
     tryInitRigelPath();
+    ModelliXMLRegistry reg = registry;
     try
     {
-      return swm.getListaXml(nomeLista, true);
+      return reg.swm.getListaXml(nomeLista, true);
     }
     catch(MissingListException | MissingSectionException ex1)
     {
-      return swm.getListaXmlFromListe(nomeLista, true);
+      return reg.swm.getListaXmlFromListe(nomeLista, true);
     }
   }
 
@@ -955,10 +1181,14 @@ public class CoreModelliXML extends AbstractCoreBaseService
   {
     CoreTurbineWrapperCache rv = (CoreTurbineWrapperCache) data.getSession().getAttribute(WrapperCacheBaseKey);
 
-    if(rv == null)
+    // i wrapper costruiti prima di una modifica effettiva delle definizioni vengono scartati;
+    // una rilettura senza modifiche (forceReloadXML) mantiene la cache della sessione
+    long version = registry.contentVersion;
+    if(rv == null || rv.getRegistryVersion() != version)
     {
       rv = new CoreTurbineWrapperCache();
       rv.init(data);
+      rv.setRegistryVersion(version);
       data.getSession().setAttribute(WrapperCacheBaseKey, rv);
     }
 
@@ -974,20 +1204,13 @@ public class CoreModelliXML extends AbstractCoreBaseService
   protected void caricaListaSql()
      throws Exception
   {
-    Element listeSql = doc.getRootElement().getChild("liste-sql");
-    if(listeSql == null)
+    if(!registry.hasSection("liste-sql"))
       die("Nessuna lista SQL caricata.");
-    for(Element e : listeSql.getChildren())
-    {
-      String nomeLista = e.getName();
-      if(nomeLista.startsWith("Ls"))
-        arListeSql.add(nomeLista);
-    }
   }
 
   @Override
   public List<String> getListeSql()
   {
-    return Collections.unmodifiableList(arListeSql);
+    return registry.getListeSql();
   }
 }
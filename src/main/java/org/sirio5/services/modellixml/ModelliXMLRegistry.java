@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2026 Nicola De Nisco
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.sirio5.services.modellixml;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
+import org.rigel5.table.peer.PeerWrapperXmlMaker;
+import org.rigel5.table.peer.TorqueObjectManager;
+import org.rigel5.table.sql.SqlWrapperXmlMaker;
+
+/**
+ * Registro delle definizioni dei modelli XML.
+ * Contiene il documento fuso, l'indice delle definizioni per sezione
+ * (liste, liste-sql, forms, ...) con il file di provenienza di ognuna
+ * e i costruttori di wrapper collegati al documento. Il registro è immutabile: una rilettura dei files XML
+ * produce un nuovo registro che sostituisce il precedente in un unico passo;
+ * le richieste in corso completano con quello che hanno già ottenuto.
+ * La versione delle definizioni (contentVersion) cambia solo quando almeno
+ * una definizione è effettivamente diversa dal registro precedente: le cache
+ * wrapper delle sessioni restano valide fino ad allora.
+ * NOTA: i wrapper restano costruiti e conservati per sessione; la condivisione
+ * fra sessioni delle parti immutabili dei wrapper (colonne, SQL) richiede
+ * il supporto di rigel5 e non è gestita qui.
+ *
+ * @author Nicola De Nisco
+ */
+public class ModelliXMLRegistry
+{
+  private static final AtomicLong versionCounter = new AtomicLong();
+
+  public final long version, contentVersion;
+  public final Document doc;
+  public final PeerWrapperXmlMaker pwm;
+  public final SqlWrapperXmlMaker swm;
+  private final Map<String, Map<String, Element>> mapSections;
+  private final List<String> listeSql;
+  private final Map<String, Map<String, File>> origins;
+  private final int changedCount;
+
+  /**
+   * Costruttore.
+   * @param doc documento fusione dei modelli
+   * @param tom gestore oggetti Torque per i wrapper Peer
+   * @param origins file di provenienza di ogni definizione (sezione, nome)
+   */
+  public ModelliXMLRegistry(Document doc, TorqueObjectManager tom, Map<String, Map<String, File>> origins)
+  {
+    this(doc, tom, origins, null, Collections.emptyList());
+  }
+
+  /**
+   * Costruttore.
+   * @param doc documento fusione dei modelli
+   * @param tom gestore oggetti Torque per i wrapper Peer
+   * @param origins file di provenienza di ogni definizione (sezione, nome)
+   * @param prev registro precedente (null se primo caricamento)
+   * @param modified files riletti rispetto al registro precedente
+   */
+  public ModelliXMLRegistry(Document doc, TorqueObjectManager tom, Map<String, Map<String, File>> origins,
+     ModelliXMLRegistry prev, Collection<File> modified)
+  {
+    this.origins = origins;
+    this.version = versionCounter.incrementAndGet();
+    this.doc = doc;
+
+    pwm = new PeerWrapperXmlMaker();
+    pwm.setTObjMan(tom);
+    pwm.setDocument(doc);
+
+    swm = new SqlWrapperXmlMaker();
+    swm.setDocument(doc);
+
+    Map<String, Map<String, Element>> sections = new HashMap<>();
+    for(Element sec : doc.getRootElement().getChildren())
+    {
+      Map<String, Element> items = sections.computeIfAbsent(sec.getName(), (k) -> new HashMap<>());
+      for(Element item : sec.getChildren())
+        items.putIfAbsent(item.getName(), item);
+    }
+
+    for(Map.Entry<String, Map<String, Element>> e : sections.entrySet())
+      e.setValue(Collections.unmodifiableMap(e.getValue()));
+    mapSections = Collections.unmodifiableMap(sections);
+
+    ArrayList<String> arListe = new ArrayList<>();
+    for(String nomeLista : getSection("liste-sql").keySet())
+    {
+      if(nomeLista.startsWith("Ls"))
+        arListe.add(nomeLista);
+    }
+    Collections.sort(arListe);
+    listeSql = Collections.unmodifiableList(arListe);
+
+    changedCount = prev == null ? -1 : countChanged(prev, modified);
+    contentVersion = changedCount == 0 ? prev.contentVersion : version;
+  }
+
+  /**
+   * Numero di definizioni modificate, aggiunte o rimosse rispetto al registro precedente.
+   * @return numero di definizioni (-1 se non c'era un registro precedente)
+   */
+  public int getChangedCount()
+  {
+    return changedCount;
+  }
+
+  /**
+   * Ritorna le definizioni di una sezione.
+   * @param section nome della sezione (liste, liste-sql, forms, ...)
+   * @return mappa nome/definizione (vuota se la sezione non esiste)
+   */
+  public Map<String, Element> getSection(String section)
+  {
+    Map<String, Element> items = mapSections.get(section);
+    return items == null ? Collections.emptyMap() : items;
+  }
+
+  /**
+   * Ritorna una definizione.
+   * ATTENZIONE: l'elemento è condiviso e non va modificato.
+   * @param section nome della sezione
+   * @param name nome della definizione
+   * @return elemento XML oppure null se non presente
+   */
+  public Element getDefinition(String section, String name)
+  {
+    return getSection(section).get(name);
+  }
+
+  /**
+   * Ritorna il file di provenienza di una definizione.
+   * @param section nome della sezione
+   * @param name nome della definizione
+   * @return file oppure null se non noto
+   */
+  public File getOrigin(String section, String name)
+  {
+    Map<String, File> items = origins.get(section);
+    return items == null ? null : items.get(name);
+  }
+
+  /**
+   * Conta le definizioni modificate rispetto ad un registro precedente.
+   * Vengono confrontate solo le definizioni provenienti dai files modificati
+   * (prima o dopo la modifica); le altre sono invariate per costruzione.
+   * @param prev registro precedente
+   * @param modified files modificati
+   * @return numero di definizioni modificate, aggiunte o rimosse
+   */
+  public int countChanged(ModelliXMLRegistry prev, Collection<File> modified)
+  {
+    XMLOutputter out = new XMLOutputter(Format.getCompactFormat());
+    Set<String> keys = new HashSet<>();
+    collectKeys(this, modified, keys);
+    collectKeys(prev, modified, keys);
+
+    int count = 0;
+    for(String key : keys)
+    {
+      int pos = key.indexOf('/');
+      String section = key.substring(0, pos), name = key.substring(pos + 1);
+      Element e1 = getDefinition(section, name), e2 = prev.getDefinition(section, name);
+
+      if(e1 == null || e2 == null || !out.outputString(e1).equals(out.outputString(e2)))
+        count++;
+    }
+
+    return count;
+  }
+
+  private static void collectKeys(ModelliXMLRegistry reg, Collection<File> modified, Set<String> keys)
+  {
+    for(Map.Entry<String, Map<String, File>> es : reg.origins.entrySet())
+    {
+      for(Map.Entry<String, File> ed : es.getValue().entrySet())
+      {
+        if(modified.contains(ed.getValue()))
+          keys.add(es.getKey() + "/" + ed.getKey());
+      }
+    }
+  }
+
+  public boolean hasSection(String section)
+  {
+    return mapSections.containsKey(section);
+  }
+
+  public List<String> getListeSql()
+  {
+    return listeSql;
+  }
+}
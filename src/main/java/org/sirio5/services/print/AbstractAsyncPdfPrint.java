@@ -217,6 +217,6 @@ abstract public class AbstractAsyncPdfPrint extends AbstractPdfPrint
     String jobCode = job.getInfo().jobCode;
     CACHE.addObject(CACHE_CLASS, jobCode,
        new AsyncPdfJobCacheItem(job, tExpiresSeconds));
-    log.debug(INT.I("Aggiunto job %s alla cache.", jobCode));
+    log.debug(INT.L("Aggiunto job %s alla cache.", jobCode));
   }
 }
@@ -23,11 +23,15 @@ import javax.servlet.http.HttpSession;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.logging.*;
 import org.sirio5.services.AbstractCoreBaseService;
+import org.sirio5.services.bus.BUS;
+import org.sirio5.services.bus.BusContext;
+import org.sirio5.services.bus.BusMessages;
 import org.sirio5.services.cache.CACHE;
 import org.sirio5.services.print.datamaker.DatamakerGeneratorFactory;
 import org.sirio5.services.print.parametri.ParametroBuilderFactory;
 import org.sirio5.services.print.plugin.PdfGenPlugin;
 import org.sirio5.services.print.plugin.PdfGeneratorFactory;
+import org.sirio5.utils.SU;
 
 /**
  * Implementazione standard del servizio
@@ -46,6 +50,8 @@ abstract public class AbstractPdfPrint extends AbstractCoreBaseService
   protected File dirTmp = null; // directory per i temporanei
   protected String xmlbaseuri = null;
   protected boolean enableCache = false;
+  protected PdfResultCache resultCache = null;
+  protected boolean resultCacheShareUsers = false;
 
   @Override
   public void coreInit()
@@ -64,6 +70,61 @@ abstract public class AbstractPdfPrint extends AbstractCoreBaseService
 
     dirTmp = getWorkTmpFile("print");
     ASSERT_DIR_WRITE(dirTmp);
+
+    if(cfg.getBoolean("enableResultCache", false))
+    {
+      File dirResultCache = new File(dirTmp, "resultcache");
+      if(!dirResultCache.isDirectory() && !dirResultCache.mkdirs())
+        throw new IOException("Impossibile creare la directory " + dirResultCache.getAbsolutePath());
+
+      // i PDF sopravvissuti ad un riavvio non sono più referenziati
+      File[] oldFiles = dirResultCache.listFiles();
+      if(oldFiles != null)
+        for(File f : oldFiles)
+          f.delete();
+
+      resultCacheShareUsers = cfg.getBoolean("resultCacheShareUsers", false);
+      resultCache = new PdfResultCache(dirResultCache,
+         cfg.getInt("resultCacheMaxEntries", 200),
+         cfg.getLong("resultCacheTtlSeconds", 0) * 1000L);
+
+      BUS.registerEventListner(AbstractPdfPrint.class.getName() + ":resultCache", this::resultCacheMessage);
+    }
+  }
+
+  /**
+   * Ascoltatore del bus messaggi per l'invalidazione della cache dei PDF.
+   * @param msgID id del messaggio
+   * @param originator chi ha inviato il messaggio
+   * @param context pacchetto dati associato al messaggio
+   * @return 0 per il flusso normale
+   * @throws Exception
+   */
+  protected int resultCacheMessage(int msgID, Object originator, BusContext context)
+     throws Exception
+  {
+    switch(msgID)
+    {
+      case BusMessages.GENERIC_OBJECT_SAVED:
+      case BusMessages.GENERIC_OBJECTS_SAVED:
+        resultCache.invalidateTable(context == null ? null : context.getAsString("tableName"));
+        break;
+
+      case BusMessages.CLEAR_GLOBAL_CACHE:
+        resultCache.clear();
+        break;
+    }
+
+    return 0;
+  }
+
+  /**
+   * Ritorna la cache dei PDF prodotti.
+   * @return la cache oppure null se non abilitata
+   */
+  public PdfResultCache getResultCache()
+  {
+    return resultCache;
   }
 
   @Override
@@ -141,6 +202,23 @@ abstract public class AbstractPdfPrint extends AbstractCoreBaseService
 
   protected File makePdfInternal(JobInfo job, int idUser, String pluginName, String dataMaker, PrintContext ctx)
      throws Exception
+  {
+    if(resultCache != null && !SU.checkTrueFalse(ctx.get(PrintContext.NO_RESULT_CACHE_KEY), false))
+    {
+      String key = resultCache.buildKey(resultCacheShareUsers ? -1 : idUser, pluginName, ctx);
+      if(key != null)
+        return resultCache.getOrRender(key, job, getTmpFile(), ctx,
+           (pdfFile) -> makePdfRender(job, idUser, pluginName, dataMaker, ctx, pdfFile));
+
+      resultCache.countNotCacheable();
+    }
+
+    return makePdfRender(job, idUser, pluginName, dataMaker, ctx, getTmpFile());
+  }
+
+  private File makePdfRender(JobInfo job, int idUser, String pluginName, String dataMaker,
+     PrintContext ctx, File pdfFile)
+     throws Exception
   {
     if(dataMaker != null)
     {
@@ -151,10 +229,11 @@ abstract public class AbstractPdfPrint extends AbstractCoreBaseService
     }
 
     return PdfGeneratorFactory.getInstance()
-       .functionPlugin(pluginName, (plg) -> makePdfWorker(plg, job, idUser, pluginName, ctx));
+       .functionPlugin(pluginName, (plg) -> makePdfWorker(plg, job, idUser, pluginName, ctx, pdfFile));
   }
 
-  private File makePdfWorker(PdfGenPlugin plg, JobInfo job, int idUser, String pluginName, PrintContext context)
+  private File makePdfWorker(PdfGenPlugin plg, JobInfo job, int idUser, String pluginName,
+     PrintContext context, File pdfFile)
      throws Exception
   {
     String reportName = context.getAsString(PrintContext.REPORT_NAME_KEY);
@@ -164,7 +243,6 @@ abstract public class AbstractPdfPrint extends AbstractCoreBaseService
     if(reportName != null)
       job.saveName = reportName + ".pdf";
 
-    File pdfFile = getTmpFile();
     context.put(PrintContext.PDFTOGEN_KEY, pdfFile);
     plg.buildPdf(job, idUser, context);
 
@@ -0,0 +1,540 @@
+/*
+ * Copyright (C) 2026 Nicola De Nisco
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.sirio5.services.print;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.commonlib5.lambda.ConsumerThrowException;
+import org.sirio5.services.print.PdfPrint.JobInfo;
+import org.sirio5.utils.SU;
+
+/**
+ * Cache dei PDF prodotti dal servizio di stampa.
+ * La chiave è composta da plugin, report e un hash canonico
+ * dei parametri presenti nel context di stampa: richieste identiche
+ * (tipicamente ristampe) vengono servite con una copia del PDF già prodotto.
+ * Richieste identiche concorrenti condividono una sola elaborazione.
+ * Le entry possono dichiarare le tabelle da cui dipendono
+ * (vedi {@link PrintContext#CACHE_TABLES_KEY}) e vengono invalidate
+ * quando una di queste tabelle viene modificata; le entry senza dipendenze
+ * dichiarate vengono invalidate al salvataggio di una tabella qualsiasi.
+ *
+ * @author Nicola De Nisco
+ */
+public class PdfResultCache
+{
+  /** Logging */
+  private static final Log log = LogFactory.getLog(PdfResultCache.class);
+  //
+  /** chiavi del context che non partecipano alla determinazione della chiave */
+  public static final Set<String> EXCLUDED_KEYS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+     PrintContext.PBEAN_KEY, PrintContext.PDFTOGEN_KEY, PrintContext.PREPARED_DATA_KEY,
+     PrintContext.SESSION_KEY, PrintContext.SESSION_ID_KEY, PrintContext.CACHE_TABLES_KEY,
+     PdfPrint.SESSION_ID, PdfPrint.PRINT_PARAM
+  )));
+  //
+  /** variabili locali */
+  protected final File dirCache;
+  protected final int maxEntries;
+  protected final long ttlMillis;
+  protected final Map<String, CacheEntry> mapEntries;
+  protected final ConcurrentHashMap<String, CompletableFuture<CacheEntry>> inFlight = new ConcurrentHashMap<>();
+  /** contatore delle invalidazioni (protetto dal lock di mapEntries) */
+  protected long generation = 0;
+  //
+  /** statistiche */
+  protected final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(),
+     shared = new AtomicLong(), notCacheable = new AtomicLong(),
+     renderMillis = new AtomicLong(), hitMillis = new AtomicLong();
+
+  /**
+   * Entry della cache: PDF master e informazioni per ricostruire il job.
+   */
+  public static class CacheEntry
+  {
+    public final String key;
+    public final File filePdf;
+    public final String tipoMime, saveName;
+    public final Set<String> tables;
+    public final long created = System.currentTimeMillis();
+
+    public CacheEntry(String key, File filePdf, String tipoMime, String saveName, Set<String> tables)
+    {
+      this.key = key;
+      this.filePdf = filePdf;
+      this.tipoMime = tipoMime;
+      this.saveName = saveName;
+      this.tables = tables;
+    }
+  }
+
+  /**
+   * Costruttore.
+   * @param dirCache directory dove conservare i PDF master
+   * @param maxEntries numero massimo di PDF in cache (gli usati meno di recente vengono eliminati)
+   * @param ttlMillis validità delle entry in millisecondi (0 = nessuna scadenza)
+   */
+  public PdfResultCache(File dirCache, int maxEntries, long ttlMillis)
+  {
+    this.dirCache = dirCache;
+    this.maxEntries = maxEntries;
+    this.ttlMillis = ttlMillis;
+
+    this.mapEntries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest)
+      {
+        if(size() <= PdfResultCache.this.maxEntries)
+          return false;
+
+        deleteEntryFile(eldest.getValue());
+        return true;
+      }
+    };
+  }
+
+  /**
+   * Determina la chiave di cache per la richiesta.
+   * @param idUser utente richiedente (-1 se la stampa è condivisa fra gli utenti)
+   * @param pluginName nome del plugin
+   * @param context context di stampa
+   * @return la chiave oppure null se il context contiene valori non canonicalizzabili
+   * @throws Exception
+   */
+  public String buildKey(int idUser, String pluginName, PrintContext context)
+     throws Exception
+  {
+    StringBuilder sb = new StringBuilder(512);
+    sb.append("U=").append(idUser)
+       .append("|P=").append(pluginName)
+       .append("|R=").append(SU.okStr(context.get(PrintContext.REPORT_NAME_KEY)))
+       .append("|I=").append(SU.okStr(context.get(PrintContext.REPORT_INFO_KEY)));
+
+    TreeMap<String, Object> sorted = new TreeMap<>(context);
+    for(Map.Entry<String, Object> entry : sorted.entrySet())
+    {
+      String key = entry.getKey();
+      if(EXCLUDED_KEYS.contains(key) || PrintContext.REPORT_NAME_KEY.equals(key)
+         || PrintContext.REPORT_INFO_KEY.equals(key))
+        continue;
+
+      sb.append('|').append(key).append('=');
+      if(!appendCanonical(sb, entry.getValue()))
+        return null;
+    }
+
+    MessageDigest md = MessageDigest.getInstance("SHA-256");
+    byte[] digest = md.digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+
+    StringBuilder hex = new StringBuilder(64);
+    for(byte b : digest)
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    return hex.toString();
+  }
+
+  private boolean appendCanonical(StringBuilder sb, Object value)
+  {
+    if(value == null)
+    {
+      sb.append("null");
+      return true;
+    }
+
+    if(value instanceof CharSequence || value instanceof Number
+       || value instanceof Boolean || value instanceof Character || value instanceof Enum)
+    {
+      sb.append(value.getClass().getSimpleName()).append(':').append(value.toString());
+      return true;
+    }
+
+    if(value instanceof Date)
+    {
+      sb.append("Date:").append(((Date) value).getTime());
+      return true;
+    }
+
+    if(value instanceof Object[])
+      return appendCanonical(sb, Arrays.asList((Object[]) value));
+
+    if(value instanceof Collection)
+    {
+      sb.append('[');
+      for(Object o : (Collection) value)
+      {
+        if(!appendCanonical(sb, o))
+          return false;
+        sb.append(',');
+      }
+      sb.append(']');
+      return true;
+    }
+
+    if(value instanceof Map)
+    {
+      TreeMap<String, Object> sorted = new TreeMap<>();
+      ((Map<?, ?>) value).forEach((k, v) -> sorted.put(String.valueOf(k), v));
+
+      sb.append('{');
+      for(Map.Entry<String, Object> entry : sorted.entrySet())
+      {
+        sb.append(entry.getKey()).append('=');
+        if(!appendCanonical(sb, entry.getValue()))
+          return false;
+        sb.append(',');
+      }
+      sb.append('}');
+      return true;
+    }
+
+    // oggetto di cui non conosciamo una rappresentazione stabile: richiesta non cacheable
+    return false;
+  }
+
+  /**
+   * Produce il PDF utilizzando la cache.
+   * Se il PDF è presente in cache ne viene restituita una copia nel file
+   * indicato da getTmpFile(); altrimenti viene invocata la funzione di rendering.
+   * Se la stessa chiave è già in elaborazione da parte di un altro thread
+   * la chiamata attende il risultato invece di avviare un secondo rendering.
+   * Il rendering avviene in un file temporaneo spostato sul master solo se
+   * completato; se durante il rendering arriva un'invalidazione il risultato
+   * viene restituito al chiamante ma non entra in cache.
+   * @param key chiave della richiesta (vedi buildKey)
+   * @param job job da completare con tipo mime e nome del file
+   * @param tmpFile file destinazione della copia restituita al chiamante
+   * @param context context di stampa; al termine del rendering viene letta
+   * l'eventuale dichiarazione delle tabelle da cui dipende il report
+   * @param render funzione di rendering effettivo; deve produrre il PDF nel file passato come parametro
+   * @return il file PDF per il chiamante
+   * @throws Exception
+   */
+  public File getOrRender(String key, JobInfo job, File tmpFile, PrintContext context,
+     ConsumerThrowException<File> render)
+     throws Exception
+  {
+    long tStart = System.currentTimeMillis();
+    CacheEntry entry = getValidEntry(key);
+
+    if(entry != null)
+    {
+      File rv = copyToJob(entry, job, tmpFile);
+      if(rv != null)
+      {
+        hits.incrementAndGet();
+        hitMillis.addAndGet(System.currentTimeMillis() - tStart);
+        return rv;
+      }
+    }
+
+    CompletableFuture<CacheEntry> future = new CompletableFuture<>();
+    CompletableFuture<CacheEntry> running = inFlight.putIfAbsent(key, future);
+
+    if(running != null)
+    {
+      // stessa richiesta già in elaborazione: attende il risultato
+      shared.incrementAndGet();
+      try
+      {
+        entry = running.get();
+      }
+      catch(ExecutionException ex)
+      {
+        if(ex.getCause() instanceof Exception)
+          throw (Exception) ex.getCause();
+        throw ex;
+      }
+
+      File rv = entry == null ? null : copyToJob(entry, job, tmpFile);
+      if(rv == null)
+      {
+        // entry invalidata durante o subito dopo il rendering: ripete la richiesta
+        return getOrRender(key, job, tmpFile, context, render);
+      }
+
+      hitMillis.addAndGet(System.currentTimeMillis() - tStart);
+      return rv;
+    }
+
+    misses.incrementAndGet();
+    File rendered = null;
+    try
+    {
+      long genStart;
+      synchronized(mapEntries)
+      {
+        genStart = generation;
+      }
+
+      // il master viene scritto solo a rendering completato: un errore non lascia file parziali
+      // e le copie in corso del master precedente non leggono un file a metà
+      File master = new File(dirCache, key + ".pdf");
+      rendered = File.createTempFile(key, ".pdf", dirCache);
+      render.accept(rendered);
+
+      entry = new CacheEntry(key, master, job.tipoMime, job.saveName,
+         normalizeTables(context.get(PrintContext.CACHE_TABLES_KEY)));
+
+      File rv;
+      synchronized(mapEntries)
+      {
+        if(generation != genStart)
+        {
+          // invalidazione arrivata durante il rendering: il PDF può essere già superato
+          Files.copy(rendered.toPath(), tmpFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+          job.tipoMime = entry.tipoMime;
+          job.saveName = entry.saveName;
+          entry = null;
+          rv = tmpFile;
+        }
+        else
+        {
+          Files.move(rendered.toPath(), master.toPath(),
+             StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+          CacheEntry old = mapEntries.put(key, entry);
+          if(old != null && !old.filePdf.equals(master))
+            deleteEntryFile(old);
+
+          rv = copyToJob(entry, job, tmpFile);
+        }
+      }
+
+      future.complete(entry);
+      return rv;
+    }
+    catch(Throwable t)
+    {
+      future.completeExceptionally(t);
+      throw t;
+    }
+    finally
+    {
+      if(rendered != null && rendered.exists() && !rendered.delete())
+        log.warn("Impossibile cancellare " + rendered.getAbsolutePath());
+
+      inFlight.remove(key, future);
+      renderMillis.addAndGet(System.currentTimeMillis() - tStart);
+    }
+  }
+
+  /**
+   * Registra una richiesta che non è stato possibile cachare.
+   */
+  public void countNotCacheable()
+  {
+    notCacheable.incrementAndGet();
+  }
+
+  protected CacheEntry getValidEntry(String key)
+  {
+    synchronized(mapEntries)
+    {
+      CacheEntry entry = mapEntries.get(key);
+      if(entry == null)
+        return null;
+
+      if((ttlMillis > 0 && (System.currentTimeMillis() - entry.created) > ttlMillis)
+         || !entry.filePdf.exists())
+      {
+        mapEntries.remove(key);
+        deleteEntryFile(entry);
+        return null;
+      }
+
+      return entry;
+    }
+  }
+
+  /**
+   * Copia il PDF master nel file del chiamante.
+   * La copia avviene sotto il lock della cache: invalidazioni ed eliminazioni
+   * concorrenti non possono cancellare il master durante la copia.
+   * @return il file copiato oppure null se il master non esiste più
+   */
+  protected File copyToJob(CacheEntry entry, JobInfo job, File tmpFile)
+     throws IOException
+  {
+    synchronized(mapEntries)
+    {
+      if(!entry.filePdf.exists())
+        return null;
+
+      // viene sempre restituita una copia: il chiamante può cancellare il suo file
+      Files.copy(entry.filePdf.toPath(), tmpFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    job.tipoMime = entry.tipoMime;
+    job.saveName = entry.saveName;
+    return tmpFile;
+  }
+
+  protected void deleteEntryFile(CacheEntry entry)
+  {
+    if(entry.filePdf.exists() && !entry.filePdf.delete())
+      log.warn("Impossibile cancellare " + entry.filePdf.getAbsolutePath());
+  }
+
+  private Set<String> normalizeTables(Object tables)
+  {
+    if(tables == null)
+      return Collections.emptySet();
+
+    Collection lsTables = tables instanceof Collection ? (Collection) tables
+                             : SU.string2List(tables.toString(), ",", true);
+
+    HashSet<String> rv = new HashSet<>();
+    for(Object t : lsTables)
+    {
+      String s = SU.okStrNull(t);
+      if(s != null)
+        rv.add(s.toUpperCase());
+    }
+    return rv;
+  }
+
+  /**
+   * Invalida tutte le entry che dipendono dalla tabella indicata.
+   * Le entry senza tabelle dichiarate vengono sempre invalidate:
+   * non è possibile sapere se la tabella modificata è fra le loro dipendenze.
+   * @param tableName nome della tabella modificata (null = tutte le entry)
+   * @return numero di entry rimosse
+   */
+  public int invalidateTable(String tableName)
+  {
+    String tn = SU.okStrNull(tableName);
+    if(tn != null)
+      tn = tn.toUpperCase();
+
+    int count = 0;
+    synchronized(mapEntries)
+    {
+      // i rendering in corso non verranno inseriti in cache
+      generation++;
+
+      Iterator<CacheEntry> itr = mapEntries.values().iterator();
+      while(itr.hasNext())
+      {
+        CacheEntry entry = itr.next();
+        if(tn == null || entry.tables.isEmpty() || entry.tables.contains(tn))
+        {
+          itr.remove();
+          deleteEntryFile(entry);
+          count++;
+        }
+      }
+    }
+
+    if(count > 0)
+      log.debug("Invalidati " + count + " PDF in cache per modifica a " + tableName);
+
+    return count;
+  }
+
+  /**
+   * Svuota completamente la cache.
+   */
+  public void clear()
+  {
+    synchronized(mapEntries)
+    {
+      generation++;
+      mapEntries.values().forEach(this::deleteEntryFile);
+      mapEntries.clear();
+    }
+  }
+
+  public int size()
+  {
+    synchronized(mapEntries)
+    {
+      return mapEntries.size();
+    }
+  }
+
+  public long getHits()
+  {
+    return hits.get();
+  }
+
+  public long getMisses()
+  {
+    return misses.get();
+  }
+
+  public long getShared()
+  {
+    return shared.get();
+  }
+
+  public long getNotCacheable()
+  {
+    return notCacheable.get();
+  }
+
+  /**
+   * Percentuale di richieste servite senza rendering.
+   * @return valore fra 0 e 1
+   */
+  public double getHitRate()
+  {
+    long served = hits.get() + shared.get();
+    long total = served + misses.get();
+    return total == 0 ? 0.0 : ((double) served) / total;
+  }
+
+  /**
+   * Tempo medio di risposta per le richieste servite dalla cache.
+   * @return millisecondi
+   */
+  public double getAvgHitMillis()
+  {
+    long served = hits.get() + shared.get();
+    return served == 0 ? 0.0 : ((double) hitMillis.get()) / served;
+  }
+
+  /**
+   * Tempo medio di rendering per le richieste non presenti in cache.
+   * @return millisecondi
+   */
+  public double getAvgRenderMillis()
+  {
+    long m = misses.get();
+    return m == 0 ? 0.0 : ((double) renderMillis.get()) / m;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("PdfResultCache size=%d hits=%d shared=%d misses=%d notCacheable=%d"
+       + " hitRate=%.2f avgHitMs=%.1f avgRenderMs=%.1f",
+       size(), getHits(), getShared(), getMisses(), getNotCacheable(),
+       getHitRate(), getAvgHitMillis(), getAvgRenderMillis());
+  }
+}
@@ -34,7 +34,9 @@ public class PrintContext extends SirioGenericContext
      SESSION_KEY = "SESSION_KEY",
      PATH_INFO_KEY = "PATH_INFO",
      SESSION_ID_KEY = "SESSION_ID",
-     QUERY_STRING_KEY = "QUERY_STRING";
+     QUERY_STRING_KEY = "QUERY_STRING",
+     CACHE_TABLES_KEY = "CACHE_TABLES_KEY",
+     NO_RESULT_CACHE_KEY = "NO_RESULT_CACHE";
 
   public PrintContext()
   {
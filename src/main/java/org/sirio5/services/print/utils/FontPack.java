@@ -17,11 +17,320 @@
  */
 package org.sirio5.services.print.utils;
 
+import com.itextpdf.text.BaseColor;
+import com.itextpdf.text.Font;
+import com.itextpdf.text.Font.FontFamily;
+import com.itextpdf.text.pdf.BaseFont;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.commonlib5.utils.Pair;
+
 /**
+ * Registro condiviso di font per la produzione di PDF.
+ * Ogni file di font viene letto una sola volta per JVM e ogni BaseFont
+ * (nome, encoding, embedding) viene creato una sola volta; anche i Font
+ * derivati (font base, dimensione, stile, colore) vengono riutilizzati.
+ * Tutti i metodi sono thread safe.
+ * ATTENZIONE: i Font restituiti sono condivisi fra documenti e thread e non vanno
+ * modificati (setSize, setColor, setStyle, ...); per personalizzarli crearne
+ * una copia con new Font(font) oppure richiedere a getFont() la variante voluta.
+ * Le statistiche di embedding contano i font incorporabili (letti da file con
+ * embedding richiesto) e quante volte sono stati riutilizzati invece di essere
+ * riletti; iText incorpora comunque un sottoinsieme dei caratteri per ogni documento.
  *
  * @author Nicola De Nisco
  */
 public class FontPack
 {
+  private static final Map<String, FontFile> mapFiles = new ConcurrentHashMap<>();
+  private static final Map<String, BaseFont> mapBaseFonts = new ConcurrentHashMap<>();
+  private static final Map<FontKey, Font> mapFonts = new ConcurrentHashMap<>();
+  private static final Set<String> embeddedKeys = ConcurrentHashMap.newKeySet();
+  //
+  // statistiche
+  private static final AtomicLong fileReads = new AtomicLong(), fileBytes = new AtomicLong(),
+     baseFontLoads = new AtomicLong(), embeddedLoads = new AtomicLong(), embeddedReuses = new AtomicLong(),
+     fontRequests = new AtomicLong(), fontCreated = new AtomicLong();
+
+  private FontPack()
+  {
+  }
+
+  /**
+   * File di font registrato: il nome del file (con estensione) serve
+   * a iText per riconoscere il tipo di font.
+   */
+  private static class FontFile
+  {
+    private final String fileName;
+    private final byte[] data;
+
+    public FontFile(String fileName, byte[] data)
+    {
+      this.fileName = fileName;
+      this.data = data;
+    }
+  }
+
+  /**
+   * Chiave dei font derivati.
+   */
+  private static class FontKey
+  {
+    private final Object base;
+    private final float size;
+    private final int style;
+    private final BaseColor color;
+
+    public FontKey(Object base, float size, int style, BaseColor color)
+    {
+      this.base = base;
+      this.size = size;
+      this.style = style;
+      this.color = color;
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return Objects.hash(base, size, style, color);
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+      if(!(obj instanceof FontKey))
+        return false;
+
+      FontKey other = (FontKey) obj;
+      return base == other.base && size == other.size && style == other.style
+         && Objects.equals(color, other.color);
+    }
+  }
+
+  /**
+   * Registra un file di font (TTF, OTF, AFM) con un nome simbolico.
+   * Il file viene letto immediatamente e mantenuto in memoria;
+   * registrazioni successive con lo stesso nome vengono ignorate.
+   * L'alias può essere un nome qualsiasi: il tipo di font viene
+   * riconosciuto dall'estensione del file.
+   * @param alias nome simbolico del font (va usato in getBaseFont)
+   * @param fontFile file del font
+   * @throws Exception
+   */
+  public static void registerFontFile(String alias, File fontFile)
+     throws Exception
+  {
+    if(mapFiles.containsKey(alias))
+      return;
+
+    FontFile ff = new FontFile(fontFile.getName(), Files.readAllBytes(fontFile.toPath()));
+    if(mapFiles.putIfAbsent(alias, ff) == null)
+    {
+      fileReads.incrementAndGet();
+      fileBytes.addAndGet(ff.data.length);
+    }
+  }
+
+  /**
+   * Ritorna un BaseFont condiviso.
+   * Il nome può essere un font standard (BaseFont.HELVETICA, ecc.),
+   * un alias registrato con registerFontFile() oppure il path di un file di font.
+   * @param name nome del font
+   * @param encoding encoding (es. BaseFont.CP1252 o BaseFont.IDENTITY_H)
+   * @param embedded vero per incorporare il font nel PDF
+   * @return il font
+   * @throws Exception
+   */
+  public static BaseFont getBaseFont(String name, String encoding, boolean embedded)
+     throws Exception
+  {
+    String key = name + "|" + encoding + "|" + embedded;
+    BaseFont bf = mapBaseFonts.get(key);
+    if(bf == null)
+    {
+      synchronized(mapBaseFonts)
+      {
+        if((bf = mapBaseFonts.get(key)) == null)
+        {
+          bf = loadBaseFont(key, name, encoding, embedded);
+          mapBaseFonts.put(key, bf);
+          baseFontLoads.incrementAndGet();
+          return bf;
+        }
+      }
+    }
+
+    if(embeddedKeys.contains(key))
+      embeddedReuses.incrementAndGet();
+
+    return bf;
+  }
+
+  private static BaseFont loadBaseFont(String key, String name, String encoding, boolean embedded)
+     throws Exception
+  {
+    FontFile ff = mapFiles.get(name);
+
+    if(ff == null && new File(name).isFile())
+    {
+      registerFontFile(name, new File(name));
+      ff = mapFiles.get(name);
+    }
+
+    if(ff == null)
+      return BaseFont.createFont(name, encoding, embedded);
+
+    if(embedded)
+    {
+      embeddedKeys.add(key);
+      embeddedLoads.incrementAndGet();
+    }
+
+    // iText riconosce il tipo di font dall'estensione: si usa il nome del file e non l'alias
+    return BaseFont.createFont(ff.fileName, encoding, embedded, false, ff.data, null);
+  }
+
+  /**
+   * Ritorna un font derivato condiviso.
+   * @param bf font base
+   * @param size dimensione in punti
+   * @param style stile (vedi Font.NORMAL, Font.BOLD, ...)
+   * @param color colore (null = nero)
+   * @return il font (da non modificare)
+   */
+  public static Font getFont(BaseFont bf, float size, int style, BaseColor color)
+  {
+    fontRequests.incrementAndGet();
+    BaseColor c = color == null ? BaseColor.BLACK : color;
+    return mapFonts.computeIfAbsent(new FontKey(bf, size, style, c), (k) ->
+    {
+      fontCreated.incrementAndGet();
+      return new Font(bf, size, style, c);
+    });
+  }
+
+  /**
+   * Ritorna un font derivato condiviso.
+   * @param family famiglia di font standard
+   * @param size dimensione in punti
+   * @param style stile (vedi Font.NORMAL, Font.BOLD, ...)
+   * @param color colore (null = nero)
+   * @return il font (da non modificare)
+   */
+  public static Font getFont(FontFamily family, float size, int style, BaseColor color)
+  {
+    fontRequests.incrementAndGet();
+    BaseColor c = color == null ? BaseColor.BLACK : color;
+    return mapFonts.computeIfAbsent(new FontKey(family, size, style, c), (k) ->
+    {
+      fontCreated.incrementAndGet();
+      return new Font(family, size, style, c);
+    });
+  }
+
+  /**
+   * Ritorna un font derivato condiviso.
+   * @param name nome del font (vedi getBaseFont)
+   * @param encoding encoding
+   * @param embedded vero per incorporare il font nel PDF
+   * @param size dimensione in punti
+   * @param style stile (vedi Font.NORMAL, Font.BOLD, ...)
+   * @param color colore (null = nero)
+   * @return il font (da non modificare)
+   * @throws Exception
+   */
+  public static Font getFont(String name, String encoding, boolean embedded, float size, int style, BaseColor color)
+     throws Exception
+  {
+    return getFont(getBaseFont(name, encoding, embedded), size, style, color);
+  }
+
+  /**
+   * Numero di file di font letti da disco.
+   * @return
+   */
+  public static long getFileReads()
+  {
+    return fileReads.get();
+  }
+
+  /**
+   * Numero di BaseFont creati.
+   * @return
+   */
+  public static long getBaseFontLoads()
+  {
+    return baseFontLoads.get();
+  }
+
+  /**
+   * Byte dei file di font mantenuti in memoria.
+   * @return
+   */
+  public static long getFileBytes()
+  {
+    return fileBytes.get();
+  }
+
+  /**
+   * Numero di BaseFont incorporabili creati (font letti da file con embedding richiesto).
+   * I font standard (Helvetica, Times, ecc.) non vengono incorporati da iText e non sono contati.
+   * @return
+   */
+  public static long getEmbeddedFontLoads()
+  {
+    return embeddedLoads.get();
+  }
+
+  /**
+   * Numero di richieste di BaseFont incorporabili servite dal registro
+   * (ognuna è una lettura e analisi del file di font evitata).
+   * @return
+   */
+  public static long getEmbeddedFontReuses()
+  {
+    return embeddedReuses.get();
+  }
+
+  /**
+   * Richieste di font derivati e font effettivamente creati.
+   * @return coppia richieste/creati
+   */
+  public static Pair<Long, Long> getFontRequests()
+  {
+    return new Pair<>(fontRequests.get(), fontCreated.get());
+  }
+
+  /**
+   * Ritorna le statistiche di utilizzo come stringa.
+   * @return statistiche
+   */
+  public static String getStatistics()
+  {
+    return String.format("FontPack files=%d fileBytes=%d baseFonts=%d embeddedFonts=%d embeddedReuses=%d"
+       + " fontRequests=%d fontCreated=%d",
+       fileReads.get(), fileBytes.get(), baseFontLoads.get(), embeddedLoads.get(), embeddedReuses.get(),
+       fontRequests.get(), fontCreated.get());
+  }
 
+  /**
+   * Svuota il registro (ad esempio dopo la sostituzione di un file di font).
+   */
+  public static void clear()
+  {
+    synchronized(mapBaseFonts)
+    {
+      mapFonts.clear();
+      mapBaseFonts.clear();
+      embeddedKeys.clear();
+      mapFiles.clear();
+      fileBytes.set(0);
+    }
+  }
 }
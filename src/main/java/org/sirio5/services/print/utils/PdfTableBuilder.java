@@ -19,11 +19,16 @@ package org.sirio5.services.print.utils;
 
 
 import com.itextpdf.text.BaseColor;
+import com.itextpdf.text.Document;
 import com.itextpdf.text.Font;
 import com.itextpdf.text.Phrase;
 import com.itextpdf.text.pdf.PdfPTable;
 import org.sirio5.utils.SU;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 
 /**
@@ -32,6 +37,8 @@ import java.util.ArrayList;
  * La tabella viene generata in un unico corpo quindi non può essere
  * intervallata con dei salti pagina. In compenso è possibile stabilire
  * dei bordi per ogni riga stampata.
+ * Per tabelle molto grandi è disponibile la stampa in streaming
+ * che scrive la tabella nel documento a blocchi di righe.
  *
  * @author Nicola De Nisco
  */
@@ -255,4 +262,120 @@ public class PdfTableBuilder
 
     return tbrig;
   }
+
+  /**
+   * Produce la stampa in streaming direttamente nel documento.
+   * La tabella viene costruita come elemento incompleto (LargeElement)
+   * e aggiunta al documento ogni chunkSize righe: le righe già scritte
+   * vengono rilasciate, quindi la memoria occupata non dipende dal numero
+   * di righe. Intestazione e riga di chiusura vengono ripetute su ogni pagina.
+   * Di tbl vengono usati font, bordi, righe vuote e flag di intestazione/chiusura;
+   * i dati arrivano invece da rows (getNumDataRow() e getRowData() non sono usati).
+   * @param document documento PDF aperto
+   * @param tbl implementazione del produttore di formattazione per la tabella
+   * @param rows iteratore sui dati delle righe (ogni array ha la dimensione del numero colonne)
+   * @param chunkSize numero di righe da accumulare prima di scrivere nel documento
+   * @throws Exception
+   */
+  public void stampa(Document document, TableBuilderListner tbl, Iterator<Object[]> rows, int chunkSize)
+     throws Exception
+  {
+    PdfPTable tbrig = getTabella();
+    tbrig.setComplete(false);
+
+    int numHeader = 0;
+    if(tbl.haveHeader())
+    {
+      stampaInstestazione(tbrig, tbl.getHeaderFont());
+      numHeader++;
+    }
+
+    if(tbl.haveFooter())
+    {
+      // la riga di chiusura diventa un footer ripetuto in fondo ad ogni pagina
+      stampaChiusura(tbrig, tbl.getFooterFont());
+      numHeader++;
+      tbrig.setFooterRows(1);
+    }
+
+    tbrig.setHeaderRows(numHeader);
+
+    int row = 0, inChunk = 0;
+    while(rows.hasNext())
+    {
+      Object[] rowData = rows.next();
+      stampa(tbrig, tbl.getRowFont(row), rowData, tbl.getBorderTop(row), tbl.getBorderBottom(row));
+      row++;
+
+      if(++inChunk >= chunkSize)
+      {
+        document.add(tbrig);
+        inChunk = 0;
+      }
+    }
+
+    int numEmptyRig = tbl.getNumEmptyRow();
+    for(int i = 0; i < numEmptyRig; i++)
+    {
+      stampaChiusura(tbrig, tbl.getRowFont(row + i));
+    }
+
+    tbrig.setComplete(true);
+    document.add(tbrig);
+  }
+
+  /**
+   * Adatta un ResultSet ad iteratore di righe per la stampa in streaming.
+   * Ogni riga viene letta dal cursore solo quando richiesta.
+   * Il ResultSet non viene chiuso.
+   * @param rs result set posizionato prima della prima riga
+   * @return iteratore sulle righe
+   * @throws SQLException
+   */
+  public static Iterator<Object[]> iterator(ResultSet rs)
+     throws SQLException
+  {
+    int numCol = rs.getMetaData().getColumnCount();
+
+    return new Iterator<Object[]>()
+    {
+      private Boolean haveNext = null;
+
+      @Override
+      public boolean hasNext()
+      {
+        try
+        {
+          if(haveNext == null)
+            haveNext = rs.next();
+          return haveNext;
+        }
+        catch(SQLException ex)
+        {
+          throw new RuntimeException(ex);
+        }
+      }
+
+      @Override
+      public Object[] next()
+      {
+        if(!hasNext())
+          throw new NoSuchElementException();
+
+        try
+        {
+          Object[] values = new Object[numCol];
+          for(int i = 0; i < numCol; i++)
+            values[i] = rs.getObject(i + 1);
+
+          haveNext = null;
+          return values;
+        }
+        catch(SQLException ex)
+        {
+          throw new RuntimeException(ex);
+        }
+      }
+    };
+  }
 }
@@ -17,6 +17,7 @@
  */
 package org.sirio5.services.security;
 
+import java.util.BitSet;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
@@ -24,6 +25,7 @@ import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.naming.NamingException;
 import javax.naming.directory.DirContext;
 import javax.naming.directory.InitialDirContext;
@@ -34,7 +36,6 @@ import org.apache.commons.lang.mutable.MutableInt;
 import org.apache.commons.lang3.Range;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.fulcrum.security.entity.Permission;
 import org.apache.fulcrum.security.model.turbine.TurbineAccessControlList;
 import org.apache.fulcrum.security.util.DataBackendException;
 import org.apache.fulcrum.security.util.PasswordMismatchException;
@@ -51,6 +52,9 @@ import org.commonlib5.utils.CommonFileUtils;
 import org.sirio5.CoreConst;
 import org.sirio5.ErrorMessageException;
 import org.sirio5.services.allarmi.ALLARM;
+import org.sirio5.services.bus.BUS;
+import org.sirio5.services.bus.BusContext;
+import org.sirio5.services.bus.BusMessages;
 import org.sirio5.services.localization.INT;
 import org.sirio5.utils.SU;
 
@@ -70,6 +74,9 @@ abstract public class AbstractCoreSecurity extends BaseService
   protected String[] userMapLdap;
   protected SecurityService turbineSecurity;
   protected PermissionManager pman;
+  protected PermissionIndex pidx = new PermissionIndex(true);
+  protected PermissionRegistrationQueue pqueue;
+  protected final AtomicBoolean busRegistered = new AtomicBoolean();
 
   protected final KeyCalculator kCalc = new KeyCalculator();
   protected final Map<String, String> userMappingLdap = new HashMap<>();
@@ -101,6 +108,14 @@ abstract public class AbstractCoreSecurity extends BaseService
     Configuration cfg = getConfiguration();
     autoSavePermessi = cfg.getBoolean("autoSavePermessi", autoSavePermessi);
     permessiNocase = cfg.getBoolean("permessiNocase", permessiNocase);
+    pidx = new PermissionIndex(permessiNocase);
+
+    // i permessi nuovi vengono salvati in background a blocchi
+    // (pman viene letto al momento del salvataggio: le classi derivate possono sostituirlo)
+    if(autoSavePermessi)
+      pqueue = new PermissionRegistrationQueue(() -> pman,
+         cfg.getInt("autoSavePermessi.batchSize", 100),
+         cfg.getLong("autoSavePermessi.delayMillis", 500));
 
     enableLdap = cfg.getBoolean("enableLdap", enableLdap);
     urlLdap = SU.okStrNull(cfg.getString("urlLdap"));
@@ -137,7 +152,7 @@ abstract public class AbstractCoreSecurity extends BaseService
           if(key != null && val != null)
           {
             userMappingLdap.put(key, val);
-            log.debug(INT.I("Ldap utente %s mappato all'utente %s.", key, val));
+            log.debug(INT.L("Ldap utente %s mappato all'utente %s.", key, val));
           }
         }
       }
@@ -294,40 +309,37 @@ abstract public class AbstractCoreSecurity extends BaseService
     if(acl.hasRole(ADMIN_ROLE))
       return true;
 
-    if(permessiNocase)
-    {
-      PermissionSet allPerms = acl.getPermissions();
-      StringTokenizer stk = new StringTokenizer(permessi, ",; ");
-      while(stk.hasMoreTokens())
-      {
-        String p = SU.okStr(stk.nextToken());
-        if(p.length() > 0 && testPermissionNocase(allPerms, p))
-          return true;
-      }
-    }
-    else
-    {
-      StringTokenizer stk = new StringTokenizer(permessi, ",; ");
-      while(stk.hasMoreTokens())
-      {
-        String p = SU.okStr(stk.nextToken());
-        if(p.length() > 0 && acl.hasPermission(p))
-          return true;
-      }
-    }
+    if(PermissionIndex.testAny(getPermissionBits(acl), pidx.parse(permessi)))
+      return true;
 
     log.info("Negato permesso " + permessi + " all'utente " + getUserID(session));
     return false;
   }
 
-  private boolean testPermissionNocase(PermissionSet allPerms, String p)
+  /**
+   * Ritorna i permessi dell'utente sotto forma di BitSet.
+   * Il BitSet è condiviso fra le sessioni con gli stessi permessi.
+   * @param acl lista di controllo accessi dell'utente
+   * @return permessi dell'utente (da non modificare)
+   */
+  protected BitSet getPermissionBits(TurbineAccessControlList acl)
   {
-    for(Permission pe : allPerms)
+    if(!busRegistered.get() && busRegistered.compareAndSet(false, true))
     {
-      if(SU.isEquNocase(p, pe.getName()))
-        return true;
+      // registrazione ritardata: il bus potrebbe non essere ancora attivo durante init()
+      BUS.registerEventListner(AbstractCoreSecurity.class.getName(), this::busMessage);
     }
-    return false;
+
+    return pidx.getPermissionBits(acl);
+  }
+
+  protected int busMessage(int msgID, Object originator, BusContext context)
+     throws Exception
+  {
+    if(msgID == BusMessages.CLEAR_GLOBAL_CACHE)
+      pidx.clearRoleSets();
+
+    return 0;
   }
 
   /**
@@ -388,34 +400,11 @@ abstract public class AbstractCoreSecurity extends BaseService
     if(acl.hasRole(ADMIN_ROLE))
       return true;
 
-    if(permessiNocase)
-    {
-      PermissionSet allPerms = acl.getPermissions();
-      StringTokenizer stk = new StringTokenizer(permessi, ",; ");
-      while(stk.hasMoreTokens())
-      {
-        String p = SU.okStr(stk.nextToken());
-        if(p.length() > 0 && !testPermissionNocase(allPerms, p))
-        {
-          // salva il risultato nella cache dei permessi utente
-          log.info("Negato permesso " + p + " all'utente " + getUserID(session));
-          return false;
-        }
-      }
-    }
-    else
+    String mancante = PermissionIndex.testAll(getPermissionBits(acl), pidx.parse(permessi));
+    if(mancante != null)
     {
-      StringTokenizer stk = new StringTokenizer(permessi, ",; ");
-      while(stk.hasMoreTokens())
-      {
-        String p = SU.okStr(stk.nextToken());
-        if(p.length() > 0 && !acl.hasPermission(p))
-        {
-          // salva il risultato nella cache dei permessi utente
-          log.info("Negato permesso " + p + " all'utente " + getUserID(session));
-          return false;
-        }
-      }
+      log.info("Negato permesso " + mancante + " all'utente " + getUserID(session));
+      return false;
     }
 
     return true;
@@ -429,14 +418,26 @@ abstract public class AbstractCoreSecurity extends BaseService
     {
       String p = SU.okStr(stk.nextToken());
       if(p.length() > 0)
-        pman.salvaPermesso(p);
+        salvaPermesso(p);
     }
   }
 
   @Override
   public void salvaPermesso(String permesso)
   {
-    pman.salvaPermesso(permesso);
+    if(pqueue != null)
+      pqueue.accoda(permesso);
+    else
+      pman.salvaPermesso(permesso);
+  }
+
+  @Override
+  public void shutdown()
+  {
+    if(pqueue != null)
+      pqueue.shutdown();
+
+    super.shutdown();
   }
 
   @Override
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2026 Nicola De Nisco
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.sirio5.services.security;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.fulcrum.security.entity.Permission;
+import org.apache.fulcrum.security.model.turbine.TurbineAccessControlList;
+import org.sirio5.utils.SU;
+
+/**
+ * Indice dei permessi.
+ * Ogni nome di permesso viene registrato una sola volta in un dizionario
+ * globale (normalizzato in maiuscolo se i permessi sono case insensitive)
+ * che gli assegna un indice numerico; i permessi di ogni lista di controllo
+ * accessi diventano un BitSet, condiviso fra tutte le sessioni con gli
+ * stessi permessi. Il BitSet è calcolato dai permessi effettivi della ACL:
+ * una modifica di ruoli o permessi produce una nuova ACL e quindi un nuovo BitSet.
+ * Anche le stringhe di permessi richieste (es. 'perm1,perm2') vengono
+ * convertite una sola volta nei relativi indici; il controllo diventa
+ * quindi una serie di test sui bit.
+ *
+ * @author Nicola De Nisco
+ */
+public class PermissionIndex
+{
+  private final boolean nocase;
+  private final AtomicInteger nextID = new AtomicInteger();
+  private final Map<String, Integer> mapNames = new ConcurrentHashMap<>();
+  private final Map<String, ParsedPermissions> mapRequests = new ConcurrentHashMap<>();
+  private final Map<BitSet, BitSet> mapRoleSets = new ConcurrentHashMap<>();
+  private final Map<TurbineAccessControlList, BitSet> mapAcl = Collections.synchronizedMap(new WeakHashMap<>());
+
+  /**
+   * Permessi richiesti già convertiti in indici.
+   */
+  public static class ParsedPermissions
+  {
+    public final String[] names;
+    public final int[] ids;
+
+    public ParsedPermissions(String[] names, int[] ids)
+    {
+      this.names = names;
+      this.ids = ids;
+    }
+  }
+
+  public PermissionIndex(boolean nocase)
+  {
+    this.nocase = nocase;
+  }
+
+  /**
+   * Ritorna l'indice di un permesso, registrandolo se necessario.
+   * @param permesso nome del permesso
+   * @return indice del permesso
+   */
+  public int getID(String permesso)
+  {
+    String key = nocase ? permesso.toUpperCase(Locale.ROOT) : permesso;
+    Integer id = mapNames.get(key);
+    if(id == null)
+      id = mapNames.computeIfAbsent(key, (k) -> nextID.getAndIncrement());
+    return id;
+  }
+
+  /**
+   * Converte una lista di permessi nei relativi indici.
+   * @param permessi lista di permessi separati da ',;' o spazio
+   * @return permessi convertiti (condivisi)
+   */
+  public ParsedPermissions parse(String permessi)
+  {
+    ParsedPermissions pp = mapRequests.get(permessi);
+    if(pp != null)
+      return pp;
+
+    ArrayList<String> names = new ArrayList<>();
+    StringTokenizer stk = new StringTokenizer(permessi, ",; ");
+    while(stk.hasMoreTokens())
+    {
+      String p = SU.okStr(stk.nextToken());
+      if(p.length() > 0)
+        names.add(p);
+    }
+
+    int[] ids = new int[names.size()];
+    for(int i = 0; i < ids.length; i++)
+      ids[i] = getID(names.get(i));
+
+    pp = new ParsedPermissions(names.toArray(new String[names.size()]), ids);
+    mapRequests.put(permessi, pp);
+    return pp;
+  }
+
+  /**
+   * Ritorna i permessi posseduti da un utente come BitSet.
+   * Il BitSet è condiviso fra tutti gli utenti con gli stessi permessi
+   * e non va modificato.
+   * @param acl lista di controllo accessi dell'utente
+   * @return permessi dell'utente
+   */
+  public BitSet getPermissionBits(TurbineAccessControlList acl)
+  {
+    BitSet bits = mapAcl.get(acl);
+    if(bits != null)
+      return bits;
+
+    bits = new BitSet();
+    for(Permission pe : acl.getPermissions())
+      bits.set(getID(pe.getName()));
+
+    BitSet shared = mapRoleSets.putIfAbsent(bits, bits);
+    if(shared != null)
+      bits = shared;
+
+    mapAcl.put(acl, bits);
+    return bits;
+  }
+
+  /**
+   * Verifica che almeno un permesso sia posseduto.
+   * @param bits permessi dell'utente
+   * @param pp permessi richiesti
+   * @return vero se almeno un permesso è presente
+   */
+  public static boolean testAny(BitSet bits, ParsedPermissions pp)
+  {
+    for(int id : pp.ids)
+    {
+      if(bits.get(id))
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Ritorna il primo permesso richiesto non posseduto.
+   * @param bits permessi dell'utente
+   * @param pp permessi richiesti
+   * @return nome del permesso mancante oppure null se tutti presenti
+   */
+  public static String testAll(BitSet bits, ParsedPermissions pp)
+  {
+    for(int i = 0; i < pp.ids.length; i++)
+    {
+      if(!bits.get(pp.ids[i]))
+        return pp.names[i];
+    }
+    return null;
+  }
+
+  /**
+   * Svuota la cache dei permessi per ruolo (ad esempio dopo modifica dei ruoli).
+   * Il dizionario dei nomi viene mantenuto: gli indici già assegnati restano validi.
+   */
+  public void clearRoleSets()
+  {
+    mapAcl.clear();
+    mapRoleSets.clear();
+  }
+
+  public int getNumPermissions()
+  {
+    return mapNames.size();
+  }
+
+  public int getNumRoleSets()
+  {
+    return mapRoleSets.size();
+  }
+}
@@ -17,6 +17,7 @@
  */
 package org.sirio5.services.security;
 
+import java.util.Collection;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.fulcrum.security.entity.Permission;
@@ -76,6 +77,19 @@ public class PermissionManager
     }
   }
 
+  /**
+   * Salva un blocco di permessi.
+   * Usata dalla coda di registrazione automatica (vedi PermissionRegistrationQueue).
+   * @param permessi nomi dei permessi
+   * @throws Exception
+   */
+  public void salvaPermessi(Collection<String> permessi)
+     throws Exception
+  {
+    for(String p : permessi)
+      salvaPermesso(p);
+  }
+
   protected void loadAdminRole()
      throws Exception
   {
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2026 Nicola De Nisco
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.sirio5.services.security;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.sirio5.utils.SU;
+
+/**
+ * Coda di registrazione automatica dei permessi.
+ * I nomi dei permessi vengono accodati dal thread della richiesta
+ * (senza accesso al db) e salvati a blocchi da un thread in background.
+ * Ogni nome viene accodato una sola volta; in caso di errore del salvataggio
+ * i nomi del blocco vengono dimenticati e saranno riproposti alla prossima richiesta.
+ *
+ * @author Nicola De Nisco
+ */
+public class PermissionRegistrationQueue
+{
+  private static final Log log = LogFactory.getLog(PermissionRegistrationQueue.class);
+
+  protected final Supplier<PermissionManager> pman;
+  protected final int batchSize;
+  protected final long delayMillis;
+  protected final Set<String> known = ConcurrentHashMap.newKeySet();
+  protected final LinkedBlockingQueue<String> queue = new LinkedBlockingQueue<>();
+  protected final Thread worker;
+  protected volatile boolean running = true;
+
+  /**
+   * Costruttore.
+   * @param pman fornitore del gestore permessi che esegue il salvataggio effettivo
+   * @param batchSize numero massimo di permessi salvati in una transazione
+   * @param delayMillis attesa per accumulare altri permessi prima del salvataggio
+   */
+  public PermissionRegistrationQueue(Supplier<PermissionManager> pman, int batchSize, long delayMillis)
+  {
+    this.pman = pman;
+    this.batchSize = Math.max(1, batchSize);
+    this.delayMillis = Math.max(0, delayMillis);
+
+    worker = new Thread(() -> runWorker());
+    worker.setName("permsave");
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  /**
+   * Accoda un permesso per il salvataggio.
+   * Ritorna immediatamente: i permessi già accodati o salvati vengono ignorati.
+   * @param permesso nome del permesso
+   */
+  public void accoda(String permesso)
+  {
+    String pp = SU.okStrNull(permesso);
+    if(pp != null && known.add(pp))
+      queue.offer(pp);
+  }
+
+  protected void runWorker()
+  {
+    while(running)
+    {
+      String first = null;
+      try
+      {
+        first = queue.poll(3, TimeUnit.SECONDS);
+        if(first == null)
+          continue;
+
+        // attende brevemente per raccogliere i permessi richiesti dalla stessa pagina
+        if(delayMillis > 0)
+          Thread.sleep(delayMillis);
+
+        List<String> batch = new ArrayList<>(batchSize);
+        batch.add(first);
+        queue.drainTo(batch, batchSize - 1);
+        salva(batch);
+      }
+      catch(InterruptedException ex)
+      {
+        // il permesso già estratto dalla coda deve essere salvato dal flush finale
+        if(first != null)
+          queue.offer(first);
+        break;
+      }
+      catch(Throwable t)
+      {
+        log.error("Errore salvataggio permessi:", t);
+      }
+    }
+
+    flush();
+  }
+
+  protected synchronized void salva(List<String> batch)
+  {
+    try
+    {
+      pman.get().salvaPermessi(batch);
+    }
+    catch(Exception ex)
+    {
+      log.error("Errore salvataggio permessi " + batch + ":", ex);
+      known.removeAll(batch);
+    }
+  }
+
+  /**
+   * Salva immediatamente tutti i permessi in coda.
+   */
+  public synchronized void flush()
+  {
+    List<String> batch = new ArrayList<>(batchSize);
+    while(queue.drainTo(batch, batchSize) > 0)
+    {
+      salva(batch);
+      batch.clear();
+    }
+  }
+
+  /**
+   * Arresta il thread di salvataggio; i permessi ancora in coda vengono salvati.
+   */
+  public void shutdown()
+  {
+    running = false;
+    worker.interrupt();
+
+    try
+    {
+      worker.join(10000);
+    }
+    catch(InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public int getPending()
+  {
+    return queue.size();
+  }
+}
@@ -17,10 +17,17 @@
  */
 package org.sirio5.services.security;
 
-import com.workingdogs.village.Record;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
-import java.util.List;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.turbine.services.security.SecurityService;
@@ -29,6 +36,7 @@ import org.rigel5.db.torque.PeerTransactAgent;
 
 /**
  * Gestione permessi direttamente in SQL.
+ * Tutte le istruzioni sono parametriche; i permessi vengono salvati a blocchi.
  *
  * @author Nicola De Nisco
  */
@@ -46,6 +54,15 @@ public class SqlPermissionManager extends PermissionManager
      + "	role_id, permission_id)\n"
      + "	VALUES (?, ?);";
 
+  public static final String lockSQL
+     = "LOCK TABLE public.turbine_permission IN SHARE ROW EXCLUSIVE MODE";
+
+  public static final String selectSQL
+     = "SELECT permission_id, permission_name FROM public.turbine_permission";
+
+  public static final String selectGrantSQL
+     = "SELECT permission_id FROM public.turbine_role_permission WHERE role_id=?";
+
   public SqlPermissionManager(SecurityService security)
   {
     super(security);
@@ -65,59 +82,100 @@ public class SqlPermissionManager extends PermissionManager
     }
   }
 
-  protected void salvaPermesso(String permesso, Connection con)
+  @Override
+  public void salvaPermessi(Collection<String> permessi)
      throws Exception
   {
-    Record rp = null;
-
-    do
-    {
-      List<Record> lsRecs = DbUtils.executeQuery(
-         "SELECT * FROM turbine_permission WHERE permission_name='" + permesso + "'", con);
-
-      if(lsRecs.isEmpty())
-      {
-        insert(permesso, con);
-        continue;
-      }
-
-      rp = lsRecs.get(0);
-    }
-    while(rp == null);
+    if(permessi.isEmpty())
+      return;
 
-    grant(rp, con);
+    loadAdminRole();
+    PeerTransactAgent.execute((con) -> salvaPermessi(permessi, con));
   }
 
-  private void insert(String permesso, Connection con)
+  protected void salvaPermesso(String permesso, Connection con)
      throws Exception
   {
-    try ( PreparedStatement ps = con.prepareStatement(insertSQL))
-    {
-      ps.setLong(1, DbUtils.getMaxField("public.turbine_permission", "permission_id", con) + 1);
-      ps.setString(2, permesso);
-      ps.setString(3, "");
-      ps.executeUpdate();
-    }
+    salvaPermessi(Collections.singletonList(permesso), con);
   }
 
-  private void grant(Record permesso, Connection con)
+  /**
+   * Salva un blocco di permessi e li assegna al ruolo amministratore.
+   * La tabella permessi viene bloccata per la durata della transazione:
+   * gli id dei nuovi permessi sono allocati in blocco a partire dal massimo corrente
+   * senza rischio di duplicati con altre istanze dell'applicazione.
+   * @param permessi nomi dei permessi
+   * @param con connessione al db (in transazione)
+   * @throws Exception
+   */
+  protected void salvaPermessi(Collection<String> permessi, Connection con)
      throws Exception
   {
-    int permid = permesso.getValue("permission_id").asInt();
+    try(Statement st = con.createStatement())
+    {
+      st.execute(lockSQL);
+    }
+
+    Map<String, Integer> mapIds = new HashMap<>();
+    try(Statement st = con.createStatement();
+       ResultSet rs = st.executeQuery(selectSQL))
+    {
+      while(rs.next())
+        mapIds.put(rs.getString(2), rs.getInt(1));
+    }
+
+    Set<String> lsNew = new LinkedHashSet<>(permessi);
+    lsNew.removeAll(mapIds.keySet());
+
+    if(!lsNew.isEmpty())
+    {
+      int nextID = (int) DbUtils.getMaxField("public.turbine_permission", "permission_id", con) + 1;
+      try(PreparedStatement ps = con.prepareStatement(insertSQL))
+      {
+        for(String p : lsNew)
+        {
+          mapIds.put(p, nextID);
+          ps.setInt(1, nextID++);
+          ps.setString(2, p);
+          ps.setString(3, "");
+          ps.addBatch();
+        }
+        ps.executeBatch();
+      }
+    }
 
-    List<Record> lsRecs = DbUtils.executeQuery("SELECT * "
-       + "  FROM public.turbine_role_permission "
-       + " WHERE role_id=" + adminRole.getId()
-       + "   AND permission_id=" + permid, con);
+    int roleID = (Integer) adminRole.getId();
+    Set<Integer> granted = new HashSet<>();
+    try(PreparedStatement ps = con.prepareStatement(selectGrantSQL))
+    {
+      ps.setInt(1, roleID);
+      try(ResultSet rs = ps.executeQuery())
+      {
+        while(rs.next())
+          granted.add(rs.getInt(1));
+      }
+    }
 
-    if(lsRecs.isEmpty())
+    int count = 0;
+    try(PreparedStatement ps = con.prepareStatement(grantSQL))
     {
-      try ( PreparedStatement ps = con.prepareStatement(grantSQL))
+      for(String p : permessi)
       {
-        ps.setInt(1, (Integer) adminRole.getId());
-        ps.setInt(2, permid);
-        ps.executeUpdate();
+        Integer permid = mapIds.get(p);
+        if(permid != null && granted.add(permid))
+        {
+          ps.setInt(1, roleID);
+          ps.setInt(2, permid);
+          ps.addBatch();
+          count++;
+        }
       }
+
+      if(count > 0)
+        ps.executeBatch();
     }
+
+    if(!lsNew.isEmpty())
+      log.info("Registrati " + lsNew.size() + " nuovi permessi: " + lsNew);
   }
 }
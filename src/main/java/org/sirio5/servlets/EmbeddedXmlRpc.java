@@ -63,7 +63,7 @@ public class EmbeddedXmlRpc extends HttpServlet
       String handlerName = handler.substring(handler.indexOf('.') + 1);
       String handlerClass = conf.getString(handler);
 
-      log.debug(INT.I("Found Handler %s as %s / %s", handler, handlerName, handlerClass));
+      log.debug(INT.L("Found Handler %s as %s / %s", handler, handlerName, handlerClass));
 
       registerHandler(phm, handlerName, handlerClass);
     }
@@ -181,7 +181,6 @@ public class ToolDirectHtml extends HttpServlet
   private void runDatatable(CoreRunData data, PrintWriter out)
      throws Exception
   {
-    String html = renderDatatable.renderJson(data);
-    out.print(html);
+    renderDatatable.renderJson(data, out);
   }
 }
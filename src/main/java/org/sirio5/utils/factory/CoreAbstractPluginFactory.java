@@ -17,15 +17,21 @@
  */
 package org.sirio5.utils.factory;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.lang.ArrayUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.commonlib5.utils.ClassOper;
 import org.commonlib5.utils.Pair;
 import org.sirio5.services.CoreServiceException;
@@ -40,6 +46,8 @@ import org.sirio5.utils.SU;
  */
 public abstract class CoreAbstractPluginFactory<T extends CoreBasePlugin>
 {
+  /** Logging */
+  private static Log log = LogFactory.getLog(CoreAbstractPluginFactory.class);
   protected String basePath = null;
   protected String[] vPaths = null;
   protected Configuration cfg = null;
@@ -47,6 +55,25 @@ public abstract class CoreAbstractPluginFactory<T extends CoreBasePlugin>
   protected HashMap<String, Pair<String, Configuration>> cache = new HashMap<>();
   protected ArrayList<String> arPlugins = new ArrayList<String>();
   public static final Pattern patClassname = Pattern.compile("^(.+).classname");
+  //
+  // cache delle risoluzioni di classe (anche negative) e dei costruttori
+  protected final ConcurrentHashMap<String, ResolvedClass> resolved = new ConcurrentHashMap<>();
+  protected final ConcurrentHashMap<Class, MethodHandle> constructors = new ConcurrentHashMap<>();
+  private static final MethodType CTOR_TYPE = MethodType.methodType(Object.class);
+
+  /**
+   * Risultato della risoluzione di un nome di classe.
+   * Se cl è null la classe non è stata trovata in nessuna path di ricerca.
+   */
+  protected static class ResolvedClass
+  {
+    public final Class cl;
+
+    public ResolvedClass(Class cl)
+    {
+      this.cl = cl;
+    }
+  }
 
   /**
    * Configura la factory.
@@ -57,6 +84,7 @@ public abstract class CoreAbstractPluginFactory<T extends CoreBasePlugin>
   {
     this.cfg = cfg;
     this.pluginCfgRadix = pluginCfgRadix;
+    clearResolutionCache();
 
     // carica path di ricerca della class del plugin
     basePath = ClassOper.getClassPackage(this.getClass());
@@ -132,6 +160,12 @@ public abstract class CoreAbstractPluginFactory<T extends CoreBasePlugin>
 
   /**
    * Carica la classe del plugin.
+   * La ricerca nelle path viene eseguita una sola volta per ogni
+   * nome classe; anche le ricerche fallite (classe non presente) vengono ricordate.
+   * Gli errori di caricamento (classe presente ma non inizializzabile,
+   * dipendenze mancanti, ecc.) non vengono memorizzati: la richiesta
+   * successiva ritenta il caricamento.
+   * La cache viene svuotata quando cambiano le path di ricerca.
    * @param className nome/classe del plugin
    * @return classe del plugin
    * @throws CoreServiceException
@@ -139,21 +173,49 @@ public abstract class CoreAbstractPluginFactory<T extends CoreBasePlugin>
   protected Class loadClass(String className)
      throws CoreServiceException
   {
+    ResolvedClass rc;
+
     try
     {
-      Class cl = ClassOper.loadClass(className, basePath, vPaths);
-      if(cl != null)
-        return cl;
+      rc = resolved.computeIfAbsent(className, (k) -> new ResolvedClass(resolveClass(className)));
     }
-    catch(Throwable t)
+    catch(RuntimeException | LinkageError e)
     {
+      log.error("Caricamento della classe " + className + " fallito.", e);
+      throw new CoreServiceException(INT.I("Classe %s non caricabile.", className), e);
     }
 
-    throw new CoreServiceException(INT.I("Classe %s non trovata.", className));
+    if(rc.cl == null)
+      throw new CoreServiceException(INT.I("Classe %s non trovata.", className));
+
+    return rc.cl;
+  }
+
+  /**
+   * Ricerca effettiva della classe nelle path di ricerca.
+   * ClassOper.loadClass ritorna null se la classe non è presente in nessuna path;
+   * gli errori di caricamento vengono propagati al chiamante.
+   * @param className nome/classe del plugin
+   * @return classe del plugin oppure null se non trovata
+   */
+  protected Class resolveClass(String className)
+  {
+    return ClassOper.loadClass(className, basePath, vPaths);
+  }
+
+  /**
+   * Svuota la cache delle classi risolte.
+   * Va chiamata quando cambiano le path di ricerca o la configurazione.
+   */
+  public void clearResolutionCache()
+  {
+    resolved.clear();
+    constructors.clear();
   }
 
   /**
    * Crea una istanza del plugin.
+   * Il costruttore di default viene risolto una sola volta per classe.
    * @param cp classe del plugin
    * @return istanza del plugin
    * @throws CoreServiceException
@@ -163,11 +225,27 @@ public abstract class CoreAbstractPluginFactory<T extends CoreBasePlugin>
   {
     try
     {
-      return (T) cp.newInstance();
+      MethodHandle ctor = constructors.get(cp);
+      if(ctor == null)
+      {
+        ctor = MethodHandles.publicLookup()
+           .findConstructor(cp, MethodType.methodType(void.class)).asType(CTOR_TYPE);
+        constructors.put(cp, ctor);
+      }
+
+      return (T) (Object) ctor.invokeExact();
+    }
+    catch(NoSuchMethodException | IllegalAccessException ex)
+    {
+      throw new CoreServiceException(INT.I("Classe %s non istanziabile.", cp.getName()), ex);
+    }
+    catch(RuntimeException | Error ex)
+    {
+      throw ex;
     }
-    catch(InstantiationException | IllegalAccessException ex)
+    catch(Throwable ex)
     {
-      throw new CoreServiceException(INT.I("Classe %s non istanziabile.", cp.getName()));
+      throw new CoreServiceException(INT.I("Classe %s non istanziabile.", cp.getName()), ex);
     }
   }
 
@@ -187,6 +265,7 @@ public abstract class CoreAbstractPluginFactory<T extends CoreBasePlugin>
   public void setBasePaths(String[] vPaths)
   {
     this.vPaths = vPaths;
+    clearResolutionCache();
   }
 
   /**
@@ -196,5 +275,6 @@ public abstract class CoreAbstractPluginFactory<T extends CoreBasePlugin>
   public void addBasePath(String basePath)
   {
     vPaths = (String[]) ArrayUtils.add(vPaths, basePath);
+    clearResolutionCache();
   }
 }
@@ -27,6 +27,7 @@ import java.awt.Color;
 import java.io.File;
 import java.io.OutputStream;
 import org.sirio5.services.localization.INT;
+import org.sirio5.services.print.utils.FontPack;
 
 /**
  * Scheletro di documento per il rendering.
@@ -43,32 +44,32 @@ public class Documento
   public static final int PAPER_A3NOBI = 4;
   public static final int PAPER_A4 = 5;
   //
-  // fonts
-  protected Font fontC06N_N = new Font(FontFamily.COURIER, 6, Font.NORMAL, BaseColor.BLACK);
-  protected Font fontC06B_I = new Font(FontFamily.COURIER, 6, Font.BOLD | Font.ITALIC, BaseColor.BLACK);
-  protected Font fontH06N_N = new Font(FontFamily.HELVETICA, 6, Font.NORMAL, BaseColor.BLACK);
-  protected Font fontH08N_N = new Font(FontFamily.HELVETICA, 8, Font.NORMAL, BaseColor.BLACK);
-  protected Font fontH08N_I = new Font(FontFamily.HELVETICA, 8, Font.ITALIC, BaseColor.BLACK);
-  protected Font fontH09N_N = new Font(FontFamily.HELVETICA, 9, Font.NORMAL, BaseColor.BLACK);
-  protected Font fontH06B_N = new Font(FontFamily.HELVETICA, 6, Font.BOLD, BaseColor.BLACK);
-  protected Font fontH08B_N = new Font(FontFamily.HELVETICA, 8, Font.BOLD, BaseColor.BLACK);
-  protected Font fontH09B_N = new Font(FontFamily.HELVETICA, 9, Font.BOLD, BaseColor.BLACK);
-  protected Font fontH10B_N = new Font(FontFamily.HELVETICA, 10, Font.BOLD, BaseColor.BLACK);
-  protected Font fontH10N_N = new Font(FontFamily.HELVETICA, 10, Font.NORMAL, BaseColor.BLACK);
-  protected Font fontH12B_N = new Font(FontFamily.HELVETICA, 12, Font.BOLD, BaseColor.BLACK);
-  protected Font fontH12N_N = new Font(FontFamily.HELVETICA, 12, Font.NORMAL, BaseColor.BLACK);
-  protected Font fontH16B_N = new Font(FontFamily.HELVETICA, 16, Font.BOLD, BaseColor.BLACK);
-  protected Font fontH16N_N = new Font(FontFamily.HELVETICA, 16, Font.NORMAL, BaseColor.BLACK);
-  protected Font fontH14B_N = new Font(FontFamily.HELVETICA, 14, Font.BOLD, BaseColor.BLACK);
-  protected Font fontH14N_N = new Font(FontFamily.HELVETICA, 14, Font.NORMAL, BaseColor.BLACK);
-  protected Font fontT18B_N = new Font(FontFamily.TIMES_ROMAN, 18, Font.BOLD, BaseColor.BLACK);
-  protected Font fontT18N_N = new Font(FontFamily.TIMES_ROMAN, 18, Font.NORMAL, BaseColor.BLACK);
+  // fonts (condivisi fra tutti i documenti: non vanno modificati, vedi FontPack)
+  protected Font fontC06N_N = FontPack.getFont(FontFamily.COURIER, 6, Font.NORMAL, BaseColor.BLACK);
+  protected Font fontC06B_I = FontPack.getFont(FontFamily.COURIER, 6, Font.BOLD | Font.ITALIC, BaseColor.BLACK);
+  protected Font fontH06N_N = FontPack.getFont(FontFamily.HELVETICA, 6, Font.NORMAL, BaseColor.BLACK);
+  protected Font fontH08N_N = FontPack.getFont(FontFamily.HELVETICA, 8, Font.NORMAL, BaseColor.BLACK);
+  protected Font fontH08N_I = FontPack.getFont(FontFamily.HELVETICA, 8, Font.ITALIC, BaseColor.BLACK);
+  protected Font fontH09N_N = FontPack.getFont(FontFamily.HELVETICA, 9, Font.NORMAL, BaseColor.BLACK);
+  protected Font fontH06B_N = FontPack.getFont(FontFamily.HELVETICA, 6, Font.BOLD, BaseColor.BLACK);
+  protected Font fontH08B_N = FontPack.getFont(FontFamily.HELVETICA, 8, Font.BOLD, BaseColor.BLACK);
+  protected Font fontH09B_N = FontPack.getFont(FontFamily.HELVETICA, 9, Font.BOLD, BaseColor.BLACK);
+  protected Font fontH10B_N = FontPack.getFont(FontFamily.HELVETICA, 10, Font.BOLD, BaseColor.BLACK);
+  protected Font fontH10N_N = FontPack.getFont(FontFamily.HELVETICA, 10, Font.NORMAL, BaseColor.BLACK);
+  protected Font fontH12B_N = FontPack.getFont(FontFamily.HELVETICA, 12, Font.BOLD, BaseColor.BLACK);
+  protected Font fontH12N_N = FontPack.getFont(FontFamily.HELVETICA, 12, Font.NORMAL, BaseColor.BLACK);
+  protected Font fontH16B_N = FontPack.getFont(FontFamily.HELVETICA, 16, Font.BOLD, BaseColor.BLACK);
+  protected Font fontH16N_N = FontPack.getFont(FontFamily.HELVETICA, 16, Font.NORMAL, BaseColor.BLACK);
+  protected Font fontH14B_N = FontPack.getFont(FontFamily.HELVETICA, 14, Font.BOLD, BaseColor.BLACK);
+  protected Font fontH14N_N = FontPack.getFont(FontFamily.HELVETICA, 14, Font.NORMAL, BaseColor.BLACK);
+  protected Font fontT18B_N = FontPack.getFont(FontFamily.TIMES_ROMAN, 18, Font.BOLD, BaseColor.BLACK);
+  protected Font fontT18N_N = FontPack.getFont(FontFamily.TIMES_ROMAN, 18, Font.NORMAL, BaseColor.BLACK);
   //
-  // various fonts
-  protected BaseFont bf_helv = BaseFont.createFont(BaseFont.HELVETICA, "Cp1252", false);
-  protected BaseFont bf_times = BaseFont.createFont(BaseFont.TIMES_ROMAN, "Cp1252", false);
-  protected BaseFont bf_courier = BaseFont.createFont(BaseFont.COURIER, "Cp1252", false);
-  protected BaseFont bf_symbol = BaseFont.createFont(BaseFont.SYMBOL, "Cp1252", false);
+  // various fonts (condivisi fra tutti i documenti)
+  protected BaseFont bf_helv = FontPack.getBaseFont(BaseFont.HELVETICA, "Cp1252", false);
+  protected BaseFont bf_times = FontPack.getBaseFont(BaseFont.TIMES_ROMAN, "Cp1252", false);
+  protected BaseFont bf_courier = FontPack.getBaseFont(BaseFont.COURIER, "Cp1252", false);
+  protected BaseFont bf_symbol = FontPack.getBaseFont(BaseFont.SYMBOL, "Cp1252", false);
   //
   // costanti per l'uso dei font predefiniti
   public static final int FONT_TYPE_HELV = 0;
@@ -242,7 +243,7 @@ public class Documento
     Rectangle rPos = getRelativeRect(relPos);
 
     ColumnText ct = new ColumnText(cb);
-    Phrase myText = new Phrase(text, new Font(font, sizeFont, Font.NORMAL, BaseColor.BLACK));
+    Phrase myText = new Phrase(text, FontPack.getFont(font, sizeFont, Font.NORMAL, BaseColor.BLACK));
     ct.setSimpleColumn(myText, rPos.getLeft(), rPos.getBottom(), rPos.getRight(), rPos.getTop(), sizeFont, align);
     ct.go();
 
@@ -122,6 +122,7 @@ public class DocumentoImmagini extends Documento
   protected float textTablePaddingRight = 10;
   //
   protected ImagePool impool = new ImagePool();
+  protected ImageLoadPipeline pipeline = null;
 
   public DocumentoImmagini()
      throws Exception
@@ -156,6 +157,23 @@ public class DocumentoImmagini extends Documento
     impool.add(toAdd);
   }
 
+  public ImageLoadPipeline getImagePipeline()
+  {
+    return pipeline;
+  }
+
+  /**
+   * Imposta il caricatore parallelo di immagini.
+   * Se impostato renderAllImages() decodifica e riduce le immagini
+   * in parallelo mentre le pagine vengono prodotte.
+   * La chiusura del pipeline è a carico del chiamante.
+   * @param pipeline caricatore immagini (null = caricamento sequenziale)
+   */
+  public void setImagePipeline(ImageLoadPipeline pipeline)
+  {
+    this.pipeline = pipeline;
+  }
+
   /**
    * Renderizzazione di tutte le immagini del pool.
    * Se si vuole renderizzare tutte le immagini in pagine
@@ -178,6 +196,9 @@ public class DocumentoImmagini extends Documento
 
     int[] immagini = new int[fi.nImg1];
 
+    if(pipeline != null)
+      startPipeline(fi, autoFormato, forceBW);
+
     for(int i = 0; i < impool.size(); i += fi.nImg1)
     {
       Arrays.fill(immagini, -1);
@@ -189,6 +210,28 @@ public class DocumentoImmagini extends Documento
     }
   }
 
+  /**
+   * Avvia il caricamento parallelo di tutto il pool nell'ordine
+   * in cui renderAllImages() lo consumerà.
+   * La cella di destinazione serve per calcolare la riduzione di risoluzione.
+   */
+  protected void startPipeline(FormatInfo fi, boolean autoFormato, boolean forceBW)
+  {
+    float cellW = getRelativeWidth(1f / fi.nCol), cellH = getRelativeHeight(1f / fi.nRow);
+    float pageW = getRelativeWidth(1f), pageH = getRelativeHeight(1f);
+
+    ArrayList<ImageLoadPipeline.ImageRequest> requests = new ArrayList<>(impool.size());
+    for(int i = 0; i < impool.size(); i++)
+    {
+      // una pagina con una sola immagine in autoformato usa tutta la pagina
+      boolean single = autoFormato && (fi.nImg1 == 1 || ((i % fi.nImg1) == 0 && (i + 1) == impool.size()));
+      requests.add(new ImageLoadPipeline.ImageRequest(impool.get(i),
+         single ? pageW : cellW, single ? pageH : cellH, forceBW));
+    }
+
+    pipeline.start(requests);
+  }
+
   /**
    * Imposta dati per la renderizzazione di una pagina immagini.
    *
@@ -387,6 +430,7 @@ public class DocumentoImmagini extends Documento
    *
    * Il file viene letto e convertito in un oggetto immagine.
    * Una eventuale forzatura a monocromatico può essere applicata.
+   * Se è attivo il caricatore parallelo l'immagine viene prelevata da questo.
    * @param fileImage file da leggere
    * @param forceBW flag per forzatura in bianco e nero
    * @return oggetto immagine da inserire nel PDF
@@ -395,6 +439,13 @@ public class DocumentoImmagini extends Documento
   protected Image readDiskImage(File fileImage, boolean forceBW)
      throws Exception
   {
+    if(pipeline != null)
+    {
+      Image img = pipeline.take(fileImage);
+      if(img != null)
+        return img;
+    }
+
     if(forceBW)
     {
       // legge l'immagine e la converte in scala di grigi
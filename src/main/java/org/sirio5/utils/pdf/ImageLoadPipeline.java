@@ -0,0 +1,440 @@
+/*
+ * Copyright (C) 2026 Nicola De Nisco
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.sirio5.utils.pdf;
+
+import com.itextpdf.text.Image;
+import com.itextpdf.text.pdf.codec.CCITTG4Encoder;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorConvertOp;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Caricatore parallelo di immagini per DocumentoImmagini.
+ * Le immagini vengono decodificate su un pool di thread limitato,
+ * ridotte alla risoluzione necessaria per la cella di destinazione
+ * (targetDpi) ed eventualmente ricompresse in JPEG o, per le pagine
+ * in bianco e nero puro, in CCITT G4.
+ * Le immagini vengono consegnate nello stesso ordine di richiesta;
+ * al massimo maxAhead immagini sono in decodifica o in attesa di
+ * essere consumate, per cui la memoria occupata resta limitata
+ * indipendentemente dal numero di immagini.
+ *
+ * @author Nicola De Nisco
+ */
+public class ImageLoadPipeline implements Closeable
+{
+  //
+  // costanti tipo ricompressione
+  public static final int COMPRESS_NONE = 0;
+  public static final int COMPRESS_JPEG = 1;
+  public static final int COMPRESS_AUTO = 2; // CCITT per immagini bitonali, JPEG per le altre
+  //
+  protected final ExecutorService pool;
+  protected final int maxAhead;
+  protected float targetDpi = 150f;
+  protected int compression = COMPRESS_AUTO;
+  protected float jpegQuality = 0.80f;
+  //
+  protected final ArrayDeque<Pending> inFlight = new ArrayDeque<>();
+  protected Iterator<ImageRequest> itrRequests = null;
+
+  /**
+   * Richiesta di caricamento di una immagine.
+   */
+  public static class ImageRequest
+  {
+    public final File fileImage;
+    public final float boxWidth, boxHeight;
+    public final boolean forceBW;
+
+    /**
+     * Costruttore.
+     * @param fileImage file immagine da caricare
+     * @param boxWidth larghezza della cella di destinazione (punti PDF)
+     * @param boxHeight altezza della cella di destinazione (punti PDF)
+     * @param forceBW conversione forzata in scala di grigi
+     */
+    public ImageRequest(File fileImage, float boxWidth, float boxHeight, boolean forceBW)
+    {
+      this.fileImage = fileImage;
+      this.boxWidth = boxWidth;
+      this.boxHeight = boxHeight;
+      this.forceBW = forceBW;
+    }
+  }
+
+  protected static class Pending
+  {
+    public final ImageRequest request;
+    public final Future<Image> future;
+
+    public Pending(ImageRequest request, Future<Image> future)
+    {
+      this.request = request;
+      this.future = future;
+    }
+  }
+
+  /**
+   * Costruttore.
+   * @param numThreads numero di thread di decodifica
+   * @param maxAhead numero massimo di immagini in decodifica o pronte ma non ancora consumate
+   */
+  public ImageLoadPipeline(int numThreads, int maxAhead)
+  {
+    AtomicInteger counter = new AtomicInteger();
+    this.maxAhead = Math.max(1, maxAhead);
+    this.pool = Executors.newFixedThreadPool(Math.max(1, numThreads), (r) ->
+    {
+      Thread th = new Thread(r);
+      th.setDaemon(true);
+      th.setName("ImageLoadPipeline_" + counter.incrementAndGet());
+      return th;
+    });
+  }
+
+  /**
+   * Costruttore con parametri di default:
+   * un thread per processore e il doppio di immagini in anticipo.
+   */
+  public ImageLoadPipeline()
+  {
+    this(Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().availableProcessors() * 2);
+  }
+
+  public float getTargetDpi()
+  {
+    return targetDpi;
+  }
+
+  /**
+   * Imposta la risoluzione di destinazione.
+   * Le immagini più grandi di quanto serve per la cella
+   * di destinazione a questa risoluzione vengono ridotte.
+   * @param targetDpi risoluzione in punti per pollice (0 = nessuna riduzione)
+   */
+  public void setTargetDpi(float targetDpi)
+  {
+    this.targetDpi = targetDpi;
+  }
+
+  public int getCompression()
+  {
+    return compression;
+  }
+
+  /**
+   * Imposta il tipo di ricompressione (vedi costanti COMPRESS_...).
+   * @param compression tipo di ricompressione
+   */
+  public void setCompression(int compression)
+  {
+    this.compression = compression;
+  }
+
+  public float getJpegQuality()
+  {
+    return jpegQuality;
+  }
+
+  public void setJpegQuality(float jpegQuality)
+  {
+    this.jpegQuality = jpegQuality;
+  }
+
+  /**
+   * Avvia il caricamento di una sequenza di immagini.
+   * Le immagini vanno poi prelevate con take() nello stesso ordine.
+   * Eventuali immagini di una sequenza precedente non consumate vengono scartate.
+   * @param requests sequenza di immagini da caricare
+   */
+  public synchronized void start(List<ImageRequest> requests)
+  {
+    cancelPending();
+    itrRequests = requests.iterator();
+    fill();
+  }
+
+  /**
+   * Preleva la prossima immagine della sequenza.
+   * Se il file indicato non corrisponde alla prossima immagine
+   * della sequenza (o la sequenza è esaurita) ritorna null
+   * e il chiamante deve caricare l'immagine autonomamente.
+   * @param fileImage file atteso
+   * @return immagine pronta per il PDF oppure null
+   * @throws Exception
+   */
+  public synchronized Image take(File fileImage)
+     throws Exception
+  {
+    Pending p = inFlight.peek();
+    if(p == null || !p.request.fileImage.equals(fileImage))
+      return null;
+
+    inFlight.poll();
+    fill();
+
+    try
+    {
+      return p.future.get();
+    }
+    catch(ExecutionException ex)
+    {
+      if(ex.getCause() instanceof Exception)
+        throw (Exception) ex.getCause();
+      throw ex;
+    }
+  }
+
+  protected void fill()
+  {
+    while(itrRequests != null && itrRequests.hasNext() && inFlight.size() < maxAhead)
+    {
+      ImageRequest r = itrRequests.next();
+      inFlight.add(new Pending(r, pool.submit(() -> decode(r))));
+    }
+  }
+
+  protected void cancelPending()
+  {
+    for(Pending p : inFlight)
+      p.future.cancel(true);
+    inFlight.clear();
+    itrRequests = null;
+  }
+
+  @Override
+  public synchronized void close()
+  {
+    cancelPending();
+    pool.shutdownNow();
+  }
+
+  /**
+   * Carica una immagine applicando riduzione e ricompressione.
+   * Può essere usata anche direttamente, senza la coda di prefetch.
+   * @param r richiesta di caricamento
+   * @return immagine pronta per il PDF
+   * @throws Exception
+   */
+  public Image decode(ImageRequest r)
+     throws Exception
+  {
+    if(targetDpi <= 0 && compression == COMPRESS_NONE && !r.forceBW)
+      return Image.getInstance(r.fileImage.getAbsolutePath());
+
+    int limitPx = targetDpi <= 0 ? Integer.MAX_VALUE
+                     : Math.max(1, Math.round(Math.max(r.boxWidth, r.boxHeight) / 72f * targetDpi));
+
+    BufferedImage img = readSubsampled(r.fileImage, limitPx);
+
+    // formato non gestito da ImageIO: lo lasciamo a iText
+    if(img == null)
+      return Image.getInstance(r.fileImage.getAbsolutePath());
+
+    boolean bilevel = isBilevel(img);
+    img = scaleToLimit(img, limitPx, bilevel);
+
+    if(r.forceBW && !bilevel && img.getType() != BufferedImage.TYPE_BYTE_GRAY)
+    {
+      ColorConvertOp op = new ColorConvertOp(ColorSpace.getInstance(ColorSpace.CS_GRAY), null);
+      img = op.filter(img, new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_BYTE_GRAY));
+    }
+
+    if(bilevel && compression == COMPRESS_AUTO)
+      return toCCITT(img);
+
+    if(compression != COMPRESS_NONE)
+      return toJpeg(img);
+
+    return Image.getInstance(img, Color.white, false);
+  }
+
+  /**
+   * Legge l'immagine con un sottocampionamento intero tale da non
+   * scendere sotto la dimensione richiesta: la memoria necessaria
+   * alla decodifica è proporzionale all'immagine finale.
+   */
+  protected BufferedImage readSubsampled(File fileImage, int limitPx)
+     throws Exception
+  {
+    try (ImageInputStream iis = ImageIO.createImageInputStream(fileImage))
+    {
+      if(iis == null)
+        return null;
+
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+      if(!readers.hasNext())
+        return null;
+
+      ImageReader reader = readers.next();
+      try
+      {
+        reader.setInput(iis, true, true);
+        int maxSide = Math.max(reader.getWidth(0), reader.getHeight(0));
+
+        ImageReadParam param = reader.getDefaultReadParam();
+        int step = maxSide / limitPx;
+        if(step > 1)
+          param.setSourceSubsampling(step, step, 0, 0);
+
+        return reader.read(0, param);
+      }
+      finally
+      {
+        reader.dispose();
+      }
+    }
+  }
+
+  protected BufferedImage scaleToLimit(BufferedImage img, int limitPx, boolean bilevel)
+  {
+    int w = img.getWidth(), h = img.getHeight();
+    int maxSide = Math.max(w, h);
+    if(maxSide <= limitPx)
+      return img;
+
+    double factor = ((double) limitPx) / maxSide;
+    int nw = Math.max(1, (int) Math.round(w * factor));
+    int nh = Math.max(1, (int) Math.round(h * factor));
+
+    int type = bilevel ? BufferedImage.TYPE_BYTE_BINARY
+                  : img.getColorModel().getNumColorComponents() == 1 ? BufferedImage.TYPE_BYTE_GRAY
+                       : BufferedImage.TYPE_INT_RGB;
+
+    BufferedImage scaled = new BufferedImage(nw, nh, type);
+    Graphics2D g = scaled.createGraphics();
+    try
+    {
+      g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+         bilevel ? RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR : RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      g.drawImage(img, 0, 0, nw, nh, Color.white, null);
+    }
+    finally
+    {
+      g.dispose();
+    }
+
+    return scaled;
+  }
+
+  protected boolean isBilevel(BufferedImage img)
+  {
+    return img.getColorModel().getPixelSize() == 1;
+  }
+
+  protected Image toCCITT(BufferedImage img)
+     throws Exception
+  {
+    int w = img.getWidth(), h = img.getHeight();
+
+    // normalizza in un raster binario compatto (una riga ogni (w+7)/8 bytes)
+    BufferedImage bin = img;
+    if(img.getType() != BufferedImage.TYPE_BYTE_BINARY || img.getRaster().getParent() != null)
+    {
+      bin = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_BINARY);
+      Graphics2D g = bin.createGraphics();
+      try
+      {
+        g.drawImage(img, 0, 0, null);
+      }
+      finally
+      {
+        g.dispose();
+      }
+    }
+
+    byte[] data = ((DataBufferByte) bin.getRaster().getDataBuffer()).getData();
+    byte[] g4 = CCITTG4Encoder.compress(data, w, h);
+
+    // per default l'indice 0 è il nero; alcune immagini usano la palette inversa
+    int params = 0;
+    if(bin.getColorModel() instanceof IndexColorModel)
+    {
+      IndexColorModel icm = (IndexColorModel) bin.getColorModel();
+      if((icm.getRGB(0) & 0xFFFFFF) == 0xFFFFFF)
+        params = Image.CCITT_BLACKIS1;
+    }
+
+    return Image.getInstance(w, h, false, Image.CCITTG4, params, g4);
+  }
+
+  protected Image toJpeg(BufferedImage img)
+     throws Exception
+  {
+    // JPEG non supporta la trasparenza né le palette
+    int cc = img.getColorModel().getNumColorComponents();
+    if(img.getColorModel().hasAlpha() || img.getColorModel() instanceof IndexColorModel
+       || (cc == 1 && img.getType() != BufferedImage.TYPE_BYTE_GRAY))
+    {
+      BufferedImage rgb = new BufferedImage(img.getWidth(), img.getHeight(),
+         cc == 1 ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB);
+      Graphics2D g = rgb.createGraphics();
+      try
+      {
+        g.drawImage(img, 0, 0, Color.white, null);
+      }
+      finally
+      {
+        g.dispose();
+      }
+      img = rgb;
+    }
+
+    ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (ImageOutputStream ios = ImageIO.createImageOutputStream(bos))
+    {
+      ImageWriteParam param = writer.getDefaultWriteParam();
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality(jpegQuality);
+      writer.setOutput(ios);
+      writer.write(null, new IIOImage(img, null, null), param);
+    }
+    finally
+    {
+      writer.dispose();
+    }
+
+    return Image.getInstance(bos.toByteArray());
+  }
+}
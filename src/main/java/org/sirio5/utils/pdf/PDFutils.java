@@ -163,6 +163,8 @@ public class PDFutils
 
   /**
    * Concatena una serie di PDF in un PDF unico di output.
+   * I PDF vengono letti uno alla volta e scritti in streaming sull'output:
+   * vedi {@link PdfMergeEngine}.
    * @param pdfInput
    * @param pdfOutput
    * @throws java.lang.Exception
@@ -177,38 +179,11 @@ public class PDFutils
   public static void mergePDF(File[] pdfInput, OutputStream pdfOutput)
      throws Exception
   {
-    PdfCopy writer = null;
-
-    // in document metto il documento concatenato
-    Document document = null;
-
-    for(int i = 0; i < pdfInput.length; i++)
+    try ( PdfMergeEngine me = new PdfMergeEngine(pdfOutput))
     {
-      File pdfDoc = pdfInput[i];
-
-      try ( InputStream is = new FileInputStream(pdfDoc))
-      {
-        PdfReader reader = new PdfReader(is);
-        if(document == null)
-        {
-          // Se document e' null sono al primo passaggio e lo lego al PdfReader e PdfWriter
-          document = new Document(reader.getPageSizeWithRotation(1));
-          writer = new PdfCopy(document, pdfOutput);
-          document.open();
-        }
-
-        // copio pagina per pagina i doc da concatenare nel doc finale
-        int n = reader.getNumberOfPages();
-        for(int j = 0; j < n; j++)
-        {
-          PdfImportedPage page = writer.getImportedPage(reader, j + 1);
-          writer.addPage(page);
-        }
-      }
+      for(int i = 0; i < pdfInput.length; i++)
+        me.addFile(pdfInput[i]);
     }
-
-    if(document != null)
-      document.close();
   }
 
   public static void sendFileAsPDFDoubleA3(HttpServletRequest request, HttpServletResponse response, File fPdf)
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2026 Nicola De Nisco
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.sirio5.utils.pdf;
+
+import com.itextpdf.text.Document;
+import com.itextpdf.text.pdf.PdfCopy;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfSmartCopy;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.sirio5.services.localization.INT;
+
+/**
+ * Concatenatore di PDF in streaming.
+ * I PDF di input vengono aperti uno alla volta con lettura parziale
+ * (gli oggetti sono letti dal file solo quando servono), copiati
+ * nell'output e rilasciati subito dopo la copia.
+ * Il documento di output viene scritto man mano sullo stream indicato,
+ * quindi la scrittura inizia con il primo file aggiunto.
+ * Con la smart copy (default) risorse identiche fra i documenti
+ * (font, immagini, loghi) vengono scritte una sola volta.
+ *
+ * <pre>
+ * try(PdfMergeEngine me = new PdfMergeEngine(out))
+ * {
+ *   for(File f : files)
+ *     me.addFile(f);
+ * }
+ * </pre>
+ *
+ * @author Nicola De Nisco
+ */
+public class PdfMergeEngine implements Closeable
+{
+  protected final OutputStream pdfOutput;
+  protected boolean smartCopy = true;
+  protected boolean fullCompression = false;
+  protected Document document = null;
+  protected PdfCopy writer = null;
+  protected int numDocuments = 0, numPages = 0;
+
+  public PdfMergeEngine(OutputStream pdfOutput)
+  {
+    this.pdfOutput = pdfOutput;
+  }
+
+  public boolean isSmartCopy()
+  {
+    return smartCopy;
+  }
+
+  /**
+   * Abilita la condivisione delle risorse identiche fra i documenti.
+   * Riduce le dimensioni dell'output a costo di un hash per ogni stream copiato.
+   * Deve essere impostata prima di aggiungere il primo documento.
+   * @param smartCopy vero per usare PdfSmartCopy
+   * @return this
+   */
+  public PdfMergeEngine setSmartCopy(boolean smartCopy)
+  {
+    ASSERT_NOT_OPEN();
+    this.smartCopy = smartCopy;
+    return this;
+  }
+
+  public boolean isFullCompression()
+  {
+    return fullCompression;
+  }
+
+  /**
+   * Abilita la compressione completa (object streams) dell'output.
+   * Deve essere impostata prima di aggiungere il primo documento.
+   * @param fullCompression vero per abilitare
+   * @return this
+   */
+  public PdfMergeEngine setFullCompression(boolean fullCompression)
+  {
+    ASSERT_NOT_OPEN();
+    this.fullCompression = fullCompression;
+    return this;
+  }
+
+  protected void ASSERT_NOT_OPEN()
+  {
+    if(document != null)
+      throw new IllegalStateException(INT.I("Concatenazione PDF già avviata."));
+  }
+
+  /**
+   * Aggiunge tutte le pagine del PDF indicato.
+   * Il file viene aperto in lettura parziale e rilasciato al termine della copia.
+   * @param pdfDoc file da aggiungere
+   * @throws Exception
+   */
+  public void addFile(File pdfDoc)
+     throws Exception
+  {
+    PdfReader reader = new PdfReader(pdfDoc.getAbsolutePath(), null, true);
+    try
+    {
+      addReader(reader);
+    }
+    finally
+    {
+      reader.close();
+    }
+  }
+
+  /**
+   * Aggiunge tutte le pagine del reader indicato.
+   * Al termine il reader viene rilasciato dal writer ma non chiuso.
+   * @param reader reader da copiare
+   * @throws Exception
+   */
+  public void addReader(PdfReader reader)
+     throws Exception
+  {
+    if(document == null)
+      open(reader);
+
+    // copio pagina per pagina i doc da concatenare nel doc finale
+    int n = reader.getNumberOfPages();
+    for(int j = 0; j < n; j++)
+      writer.addPage(writer.getImportedPage(reader, j + 1));
+
+    // scrive gli oggetti ancora in sospeso e libera le strutture del reader
+    writer.freeReader(reader);
+
+    numDocuments++;
+    numPages += n;
+  }
+
+  protected void open(PdfReader firstReader)
+     throws Exception
+  {
+    // il primo documento determina il formato di default
+    document = new Document(firstReader.getPageSizeWithRotation(1));
+    writer = smartCopy ? new PdfSmartCopy(document, pdfOutput) : new PdfCopy(document, pdfOutput);
+    if(fullCompression)
+      writer.setFullCompression();
+    document.open();
+  }
+
+  /**
+   * Chiude il documento di output.
+   * Come per PdfCopy anche lo stream di output viene chiuso.
+   * Se nessun documento è stato aggiunto non viene prodotto nulla.
+   * @throws IOException
+   */
+  @Override
+  public void close()
+     throws IOException
+  {
+    if(document != null && document.isOpen())
+      document.close();
+  }
+
+  public int getNumDocuments()
+  {
+    return numDocuments;
+  }
+
+  public int getNumPages()
+  {
+    return numPages;
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2026 Nicola De Nisco
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.sirio5.utils.velocity;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.velocity.Template;
+import org.apache.velocity.context.Context;
+import org.apache.velocity.util.ClassUtils;
+import org.sirio5.utils.SU;
+
+/**
+ * Cache dei modelli Velocity caricati dal classpath.
+ * Ogni risorsa viene letta e compilata una sola volta; il Template
+ * ottenuto è immutabile e può essere usato contemporaneamente da più thread.
+ * In sviluppo (vedi SU.isDebugEnvironment() e setCheckModified) le risorse
+ * presenti su file system vengono ricompilate quando cambia la data di modifica.
+ *
+ * @author Nicola De Nisco
+ */
+public class ResourceTemplateCache
+{
+  private static final Map<String, CachedTemplate> cache = new ConcurrentHashMap<>();
+  private static volatile boolean checkModified = SU.isDebugEnvironment();
+
+  private ResourceTemplateCache()
+  {
+  }
+
+  private static class CachedTemplate
+  {
+    final Template template;
+    final File source;
+    final long lastModified;
+
+    public CachedTemplate(Template template, File source)
+    {
+      this.template = template;
+      this.source = source;
+      this.lastModified = source == null ? 0 : source.lastModified();
+    }
+
+    public boolean isModified()
+    {
+      return source != null && source.lastModified() != lastModified;
+    }
+  }
+
+  public static boolean isCheckModified()
+  {
+    return checkModified;
+  }
+
+  /**
+   * Abilita il controllo della data di modifica delle risorse.
+   * Da usare solo in sviluppo: ad ogni richiesta viene interrogato il file system.
+   * @param checkModified vero per ricaricare i modelli modificati
+   */
+  public static void setCheckModified(boolean checkModified)
+  {
+    ResourceTemplateCache.checkModified = checkModified;
+  }
+
+  /**
+   * Ritorna il modello compilato per la risorsa indicata.
+   * @param clazz classe di riferimento per il caricamento della risorsa
+   * @param resource nome della risorsa (es. '/ToolDatatable.vm')
+   * @return modello compilato
+   * @throws Exception
+   */
+  public static Template getTemplate(Class clazz, String resource)
+     throws Exception
+  {
+    String key = clazz.getName() + "|" + resource;
+    CachedTemplate ct = cache.get(key);
+
+    if(ct == null || (checkModified && ct.isModified()))
+    {
+      ct = loadTemplate(clazz, resource);
+      cache.put(key, ct);
+    }
+
+    return ct.template;
+  }
+
+  private static CachedTemplate loadTemplate(Class clazz, String resource)
+     throws Exception
+  {
+    try(InputStream is = ClassUtils.getResourceAsStream(clazz, resource))
+    {
+      if(is == null)
+        throw new FileNotFoundException(resource);
+
+      InputStreamReader reader = new InputStreamReader(is, "UTF-8");
+      Template t = VelocityParser.createTemplate(reader, resource);
+      return new CachedTemplate(t, getSourceFile(clazz, resource));
+    }
+  }
+
+  private static File getSourceFile(Class clazz, String resource)
+  {
+    try
+    {
+      URL url = clazz.getResource(resource);
+      if(url != null && "file".equals(url.getProtocol()))
+        return new File(url.toURI());
+    }
+    catch(Exception ex)
+    {
+    }
+
+    return null;
+  }
+
+  /**
+   * Renderizza la risorsa indicata con il context indicato.
+   * @param clazz classe di riferimento per il caricamento della risorsa
+   * @param resource nome della risorsa (es. '/ToolDatatable.vm')
+   * @param ctx context velocity
+   * @param writer il ricevitore dell'output
+   * @throws Exception
+   */
+  public static void merge(Class clazz, String resource, Context ctx, Writer writer)
+     throws Exception
+  {
+    Template t = getTemplate(clazz, resource);
+    new VelocityParser(ctx).parseTemplate(t, writer);
+  }
+
+  /**
+   * Svuota la cache dei modelli.
+   */
+  public static void clear()
+  {
+    cache.clear();
+  }
+}
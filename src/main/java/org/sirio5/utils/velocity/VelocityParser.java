@@ -86,6 +86,19 @@ public class VelocityParser
     mergeTemplate(t, writer);
   }
 
+  /**
+   * Parsing di un modello già compilato con output nel writer specificato.
+   * Il modello può essere condiviso fra più thread (vedi ResourceTemplateCache).
+   * @param t modello compilato
+   * @param writer il ricevitore dell'output
+   * @throws Exception
+   */
+  public void parseTemplate(Template t, Writer writer)
+     throws Exception
+  {
+    mergeTemplate(t, writer);
+  }
+
   protected void mergeTemplate(Template t, Writer writer)
      throws Exception
   {
@@ -150,6 +163,20 @@ public class VelocityParser
    */
   public Template createTemplateFromReader(Reader reader, String templateName)
      throws Exception
+  {
+    return createTemplate(reader, templateName);
+  }
+
+  /**
+   * Crea un oggetto Template a partire da un reader generico.
+   * Versione statica di createTemplateFromReader().
+   * @param reader sorgente dati
+   * @param templateName nome del file template
+   * @return oggetto Template
+   * @throws Exception
+   */
+  public static Template createTemplate(Reader reader, String templateName)
+     throws Exception
   {
     RuntimeServices runtimeServices = RuntimeSingleton.getRuntimeServices();
     Template template = new Template();